@@ -0,0 +1,200 @@
+package qrcode;
+
+import java.util.Arrays;
+
+/**
+ * Growable sequence of bits packed in a long[], most significant bit first.
+ *
+ * The bit at index i is stored in word i / 64, at position 63 - (i % 64), so
+ * that the bits read from left to right in the words in the order they were
+ * appended. A buffer can be cleared and reused without allocating again.
+ */
+public final class BitBuffer {
+
+	private static final int DEFAULT_CAPACITY = 1024;
+
+	private long[] words;
+	private int size;
+
+	/**
+	 * Create an empty buffer
+	 */
+	public BitBuffer() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create an empty buffer
+	 * 
+	 * @param capacity
+	 *            the number of bits the buffer can hold before growing
+	 */
+	public BitBuffer(int capacity) {
+		words = new long[Math.max(1, (capacity + 63) >>> 6)];
+	}
+
+	/**
+	 * Create a buffer holding the given bits
+	 * 
+	 * @param bits
+	 *            the bits to copy, in order
+	 */
+	public BitBuffer(boolean[] bits) {
+		this(bits.length);
+		for (boolean bit : bits) {
+			appendBit(bit);
+		}
+	}
+
+	/**
+	 * @return the number of bits in the buffer
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Remove all the bits, keeping the allocated storage
+	 */
+	public void clear() {
+		Arrays.fill(words, 0, Math.min(words.length, (size + 63) >>> 6), 0L);
+		size = 0;
+	}
+
+	/**
+	 * Make sure the buffer can hold the given number of bits without growing
+	 * 
+	 * @param bits
+	 *            the capacity needed
+	 */
+	public void ensureCapacity(int bits) {
+		final int WORDS = (bits + 63) >>> 6;
+		if (WORDS > words.length) {
+			words = Arrays.copyOf(words, Math.max(WORDS, words.length * 2));
+		}
+	}
+
+	/**
+	 * Append a single bit
+	 * 
+	 * @param bit
+	 *            the bit to append
+	 */
+	public void appendBit(boolean bit) {
+		ensureCapacity(size + 1);
+		if (bit) {
+			words[size >>> 6] |= 1L << (63 - (size & 63));
+		}
+		++size;
+	}
+
+	/**
+	 * Append the count least significant bits of value, most significant first
+	 * 
+	 * @param value
+	 *            the bits to append
+	 * @param count
+	 *            the number of bits, between 0 and 32
+	 */
+	public void appendBits(int value, int count) {
+		if (count < 0 || count > 32) {
+			throw new IllegalArgumentException("Between 0 and 32 bits can be appended at once");
+		}
+		if (count == 0) {
+			return;
+		}
+		ensureCapacity(size + count);
+
+		final long BITS = (value & 0xFFFF_FFFFL) & (-1L >>> (64 - count));
+		final int WORD = size >>> 6;
+		final int FREE = 64 - (size & 63);
+
+		if (count <= FREE) {
+			words[WORD] |= BITS << (FREE - count);
+		} else {
+			words[WORD] |= BITS >>> (count - FREE);
+			words[WORD + 1] |= BITS << (64 - (count - FREE));
+		}
+		size += count;
+	}
+
+	/**
+	 * Append all the bits of another buffer
+	 * 
+	 * @param other
+	 *            the bits to append
+	 */
+	public void appendBits(BitBuffer other) {
+		ensureCapacity(size + other.size);
+		for (int i = 0; i < other.size; i += 32) {
+			final int COUNT = Math.min(32, other.size - i);
+			appendBits(other.getBits(i, COUNT), COUNT);
+		}
+	}
+
+	/**
+	 * @param index
+	 *            the index of the bit, between 0 and size() - 1
+	 * @return the bit at the given index
+	 */
+	public boolean getBit(int index) {
+		checkIndex(index, 1);
+		return ((words[index >>> 6] << (index & 63)) < 0);
+	}
+
+	/**
+	 * Read several bits at once
+	 * 
+	 * @param index
+	 *            the index of the first bit
+	 * @param count
+	 *            the number of bits to read, between 0 and 32
+	 * @return the bits, the first one being the most significant
+	 */
+	public int getBits(int index, int count) {
+		if (count < 0 || count > 32) {
+			throw new IllegalArgumentException("Between 0 and 32 bits can be read at once");
+		}
+		if (count == 0) {
+			return 0;
+		}
+		checkIndex(index, count);
+
+		final int WORD = index >>> 6;
+		final int OFFSET = index & 63;
+		long bits = words[WORD] << OFFSET;
+		if (OFFSET + count > 64) {
+			bits |= words[WORD + 1] >>> (64 - OFFSET);
+		}
+		return (int) (bits >>> (64 - count));
+	}
+
+	/**
+	 * Read a whole word of 64 bits. The bits after size() are 0.
+	 * 
+	 * @param wordIndex
+	 *            the index of the word, bits 64 * wordIndex to 64 * wordIndex + 63
+	 * @return the word, the first bit being the most significant
+	 */
+	public long getWord(int wordIndex) {
+		return wordIndex < words.length ? words[wordIndex] : 0L;
+	}
+
+	/**
+	 * @return a copy of the bits as a boolean array
+	 */
+	public boolean[] toBooleanArray() {
+		boolean[] bits = new boolean[size];
+		for (int i = 0; i < size; ++i) {
+			bits[i] = getBit(i);
+		}
+		return bits;
+	}
+
+	private void checkIndex(int index, int count) {
+		if (index < 0 || index + count > size) {
+			throw new IndexOutOfBoundsException("Bits [" + index + ", " + (index + count) + ") out of a buffer of " + size + " bits");
+		}
+	}
+
+}
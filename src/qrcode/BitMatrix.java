@@ -0,0 +1,201 @@
+package qrcode;
+
+import java.util.Arrays;
+
+/**
+ * Square matrix of modules packed one bit per module.
+ *
+ * Each row y is stored in stride() consecutive longs, the module at column x
+ * being the bit (x % 64) of the word x / 64 (least significant bit first). The
+ * bits after the last column of a row are always 0. A second bit plane marks
+ * the function modules (patterns, timing, format...) which must not receive
+ * data.
+ *
+ * Coordinates are given as (x, y) = (column, row), like the int[][] matrices
+ * which are indexed [x][y].
+ */
+public final class BitMatrix {
+
+	private final int size;
+	private final int stride;
+	private final long[] modules;
+	private final long[] functions;
+
+	/**
+	 * Create a matrix with all the modules light and no function module
+	 * 
+	 * @param size
+	 *            the number of modules on each side
+	 */
+	public BitMatrix(int size) {
+		this.size = size;
+		this.stride = (size + 63) >>> 6;
+		this.modules = new long[size * stride];
+		this.functions = new long[size * stride];
+	}
+
+	/**
+	 * Convert an ARGB matrix. The modules with a non zero alpha component are
+	 * considered as function modules.
+	 * 
+	 * @param matrix
+	 *            the ARGB matrix, indexed [x][y]
+	 * @return the packed matrix
+	 */
+	public static BitMatrix fromARGB(int[][] matrix) {
+		BitMatrix bits = new BitMatrix(matrix.length);
+		for (int x = 0; x < matrix.length; ++x) {
+			for (int y = 0; y < matrix.length; ++y) {
+				if (!Util.isWritable(matrix[x][y])) {
+					bits.setFunction(x, y, matrix[x][y] == MatrixConstruction.B);
+				}
+			}
+		}
+		return bits;
+	}
+
+	/**
+	 * Convert the matrix to ARGB, to be displayed or exported
+	 * 
+	 * @return the ARGB matrix, indexed [x][y]
+	 */
+	public int[][] toARGB() {
+		int[][] matrix = new int[size][size];
+		for (int y = 0; y < size; ++y) {
+			final int ROW = y * stride;
+			for (int x = 0; x < size; ++x) {
+				matrix[x][y] = (modules[ROW + (x >>> 6)] & (1L << x)) != 0 ? MatrixConstruction.B : MatrixConstruction.W;
+			}
+		}
+		return matrix;
+	}
+
+	/**
+	 * @return the number of modules on each side
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @return the number of longs used by each row
+	 */
+	public int getStride() {
+		return stride;
+	}
+
+	/**
+	 * @return true if the module is dark
+	 */
+	public boolean get(int x, int y) {
+		return (modules[y * stride + (x >>> 6)] & (1L << x)) != 0;
+	}
+
+	/**
+	 * Set the color of a module
+	 * 
+	 * @param dark
+	 *            true for a dark module
+	 */
+	public void set(int x, int y, boolean dark) {
+		final int WORD = y * stride + (x >>> 6);
+		if (dark) {
+			modules[WORD] |= 1L << x;
+		} else {
+			modules[WORD] &= ~(1L << x);
+		}
+	}
+
+	/**
+	 * Set the color of a module and mark it as a function module
+	 * 
+	 * @param dark
+	 *            true for a dark module
+	 */
+	public void setFunction(int x, int y, boolean dark) {
+		functions[y * stride + (x >>> 6)] |= 1L << x;
+		set(x, y, dark);
+	}
+
+	/**
+	 * @return true if the module belongs to a function pattern
+	 */
+	public boolean isFunction(int x, int y) {
+		return (functions[y * stride + (x >>> 6)] & (1L << x)) != 0;
+	}
+
+	/**
+	 * Copy the modules and the function mask of another matrix of the same size
+	 * 
+	 * @param other
+	 *            the matrix to copy
+	 */
+	public void copyFrom(BitMatrix other) {
+		if (other.size != size) {
+			throw new IllegalArgumentException("The matrices do not have the same size");
+		}
+		System.arraycopy(other.modules, 0, modules, 0, modules.length);
+		System.arraycopy(other.functions, 0, functions, 0, functions.length);
+	}
+
+	/**
+	 * Make all the modules light and remove the function mask
+	 */
+	public void clear() {
+		Arrays.fill(modules, 0L);
+		Arrays.fill(functions, 0L);
+	}
+
+	/**
+	 * Invert the modules set in a plane packed in the same layout, one word
+	 * at a time
+	 * 
+	 * @param plane
+	 *            the packed modules to invert
+	 */
+	void xor(long[] plane) {
+		for (int w = 0; w < modules.length; ++w) {
+			modules[w] ^= plane[w];
+		}
+	}
+
+	/**
+	 * @return the number of dark modules
+	 */
+	public int countDark() {
+		int count = 0;
+		for (long word : modules) {
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	/**
+	 * Give access to the packed modules, row after row
+	 */
+	long[] modules() {
+		return modules;
+	}
+
+	/**
+	 * Give access to the packed function mask, row after row
+	 */
+	long[] functions() {
+		return functions;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof BitMatrix)) {
+			return false;
+		}
+		BitMatrix other = (BitMatrix) o;
+		return size == other.size && Arrays.equals(modules, other.modules) && Arrays.equals(functions, other.functions);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(modules) * 31 + size;
+	}
+
+}
@@ -0,0 +1,204 @@
+package qrcode;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import qrcode.QRCodeInfos.CorrectionLvl;
+import reedsolomon.ErrorCorrectionEncoding;
+
+/**
+ * Split the data codewords into the Reed-Solomon blocks of a version, compute
+ * the error correction of each block and interleave the result.
+ *
+ * The blocks of group 1 hold (total / blocks) - ecc data codewords, the ones of
+ * group 2 hold one more. The final sequence is made of the i-th data codeword
+ * of every block for each i, followed by the i-th ECC of every block.
+ */
+public final class BlockInterleaver {
+
+	/*
+	 * Minimum number of blocks for which the encoding is split on the fork-join pool
+	 */
+	private static final int PARALLEL_THRESHOLD = 8;
+
+	private BlockInterleaver() {
+	}
+
+	/**
+	 * Add the interleaved error correction to the data codewords
+	 * 
+	 * @param dataCodewords
+	 *            the data codewords, padded to the capacity of the version
+	 * @param version
+	 *            the version of the QR code
+	 * @param lvl
+	 *            the error correction level
+	 * @return the data and ECC codewords, interleaved block by block
+	 */
+	public static int[] interleave(int[] dataCodewords, int version, CorrectionLvl lvl) {
+
+		int[] interleaved = new int[QRCodeInfos.getTotalCodewords(version)];
+		interleave(dataCodewords, version, lvl, interleaved);
+		return interleaved;
+	}
+
+	/**
+	 * Add the interleaved error correction to the data codewords
+	 * 
+	 * @param dataCodewords
+	 *            the data codewords, padded to the capacity of the version
+	 * @param version
+	 *            the version of the QR code
+	 * @param lvl
+	 *            the error correction level
+	 * @param interleaved
+	 *            the destination array, at least as long as the total number of
+	 *            codewords of the version
+	 */
+	public static void interleave(int[] dataCodewords, int version, CorrectionLvl lvl, int[] interleaved) {
+
+		final int TOTAL = QRCodeInfos.getTotalCodewords(version);
+		final int BLOCKS = QRCodeInfos.getBlockCount(version, lvl);
+		final int ECC = QRCodeInfos.getECCPerBlock(version, lvl);
+		final int DATA_LENGTH = TOTAL - BLOCKS * ECC;
+
+		if (dataCodewords.length != DATA_LENGTH) {
+			throw new IllegalArgumentException("Version " + version + "-" + lvl + " needs " + DATA_LENGTH
+					+ " data codewords, got " + dataCodewords.length);
+		}
+		interleaveData(dataCodewords, TOTAL, BLOCKS, ECC, interleaved);
+
+		// Number of blocks in group 1 and their data length, group 2 blocks hold one more codeword
+		final int SHORT_BLOCKS = BLOCKS - TOTAL % BLOCKS;
+		final int SHORT_LENGTH = TOTAL / BLOCKS - ECC;
+
+		int[] offsets = new int[BLOCKS];
+		int[] lengths = new int[BLOCKS];
+		for (int b = 0; b < BLOCKS; ++b) {
+			offsets[b] = blockOffset(b, SHORT_BLOCKS, SHORT_LENGTH);
+			lengths[b] = SHORT_LENGTH + (b < SHORT_BLOCKS ? 0 : 1);
+		}
+
+		// Error correction codewords, the i-th ECC of block b goes to DATA_LENGTH + i * BLOCKS + b
+		BlockTask task = new BlockTask(dataCodewords, offsets, lengths, interleaved, 0, BLOCKS, ECC, DATA_LENGTH);
+		if (BLOCKS >= PARALLEL_THRESHOLD) {
+			ForkJoinPool.commonPool().invoke(task);
+		} else {
+			task.compute();
+		}
+	}
+
+	/**
+	 * Add the interleaved error correction to the data codewords, on the
+	 * calling thread and without allocating: the offsets of the blocks and the
+	 * working storage of the Reed-Solomon backend are taken from the context
+	 * 
+	 * @param dataCodewords
+	 *            the data codewords, padded to the capacity of the version.
+	 *            Only the first ones are read if the array is longer
+	 * @param version
+	 *            the version of the QR code
+	 * @param lvl
+	 *            the error correction level
+	 * @param interleaved
+	 *            the destination array, at least as long as the total number of
+	 *            codewords of the version
+	 * @param context
+	 *            the scratch storage of the calling encoding
+	 */
+	public static void interleave(int[] dataCodewords, int version, CorrectionLvl lvl, int[] interleaved,
+			EncoderContext context) {
+
+		final int TOTAL = QRCodeInfos.getTotalCodewords(version);
+		final int BLOCKS = QRCodeInfos.getBlockCount(version, lvl);
+		final int ECC = QRCodeInfos.getECCPerBlock(version, lvl);
+		final int DATA_LENGTH = TOTAL - BLOCKS * ECC;
+
+		if (dataCodewords.length < DATA_LENGTH) {
+			throw new IllegalArgumentException("Version " + version + "-" + lvl + " needs " + DATA_LENGTH
+					+ " data codewords, got " + dataCodewords.length);
+		}
+		interleaveData(dataCodewords, TOTAL, BLOCKS, ECC, interleaved);
+
+		final int SHORT_BLOCKS = BLOCKS - TOTAL % BLOCKS;
+		final int SHORT_LENGTH = TOTAL / BLOCKS - ECC;
+		final int[] OFFSETS = context.blockOffsets();
+		final int[] LENGTHS = context.blockLengths();
+		for (int b = 0; b < BLOCKS; ++b) {
+			OFFSETS[b] = blockOffset(b, SHORT_BLOCKS, SHORT_LENGTH);
+			LENGTHS[b] = SHORT_LENGTH + (b < SHORT_BLOCKS ? 0 : 1);
+		}
+
+		ErrorCorrectionEncoding.encodeBlocks(dataCodewords, OFFSETS, LENGTHS, 0, BLOCKS, interleaved, DATA_LENGTH,
+				BLOCKS, context.encoder(ECC), context.register(ECC));
+	}
+
+	/**
+	 * Write the data codewords in interleaved order: the i-th codeword of
+	 * every block for each i, the extra codeword of the group 2 blocks last
+	 */
+	private static void interleaveData(int[] dataCodewords, int total, int blocks, int ecc, int[] interleaved) {
+
+		final int SHORT_BLOCKS = blocks - total % blocks;
+		final int SHORT_LENGTH = total / blocks - ecc;
+
+		int index = 0;
+		for (int i = 0; i <= SHORT_LENGTH; ++i) {
+			for (int b = 0; b < blocks; ++b) {
+				if (i < SHORT_LENGTH || b >= SHORT_BLOCKS) {
+					interleaved[index++] = dataCodewords[blockOffset(b, SHORT_BLOCKS, SHORT_LENGTH) + i];
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the index in the data sequence of the first codeword of the given block
+	 */
+	private static int blockOffset(int block, int shortBlocks, int shortLength) {
+		return block * shortLength + Math.max(0, block - shortBlocks);
+	}
+
+	/**
+	 * Encode the ECC of a range of blocks, splitting the range in halves on the
+	 * fork-join pool until it is small enough
+	 */
+	private static final class BlockTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int[] data;
+		private final int[] offsets;
+		private final int[] lengths;
+		private final int[] out;
+		private final int from;
+		private final int to;
+		private final int ecc;
+		private final int dataLength;
+
+		BlockTask(int[] data, int[] offsets, int[] lengths, int[] out, int from, int to, int ecc, int dataLength) {
+			this.data = data;
+			this.offsets = offsets;
+			this.lengths = lengths;
+			this.out = out;
+			this.from = from;
+			this.to = to;
+			this.ecc = ecc;
+			this.dataLength = dataLength;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > PARALLEL_THRESHOLD) {
+				// Keep the halves aligned on 8 blocks so that the SWAR backend fills its lanes
+				final int MIDDLE = from + ((((to - from) >>> 1) + 7) & ~7);
+				invokeAll(new BlockTask(data, offsets, lengths, out, from, MIDDLE, ecc, dataLength),
+						new BlockTask(data, offsets, lengths, out, MIDDLE, to, ecc, dataLength));
+				return;
+			}
+
+			ErrorCorrectionEncoding.encodeBlocks(data, offsets, lengths, from, to, ecc, out, dataLength, lengths.length);
+		}
+	}
+
+}
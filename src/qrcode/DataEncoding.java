@@ -1,32 +1,577 @@
 package qrcode;
 
-import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
+import qrcode.QRCodeInfos.CorrectionLvl;
 import reedsolomon.ErrorCorrectionEncoding;
 
-import static qrcode.Util.toInt;
-
 public final class DataEncoding {
 
+	private static final int ECI_MODE_INDICATOR = 0b0111;
+
+	/**
+	 * ECI assignment number of UTF-8
+	 */
+	public static final int UTF8_ECI = 26;
+
+	private static final String ALPHANUMERIC_CHARSET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ $%*+-./:";
+
+	/*
+	 * ALPHANUMERIC_VALUES[c] = value of the ASCII character c in alphanumeric
+	 * mode (the digits being 0 to 9), -1 if it is not part of the charset
+	 */
+	private static final byte[] ALPHANUMERIC_VALUES = alphanumericTableGenerator();
+
+	private static byte[] alphanumericTableGenerator() {
+		byte[] table = new byte[128];
+		Arrays.fill(table, (byte) -1);
+		for (int i = 0; i < ALPHANUMERIC_CHARSET.length(); ++i) {
+			table[ALPHANUMERIC_CHARSET.charAt(i)] = (byte) i;
+		}
+		return table;
+	}
+
 	/**
 	 * @param input
 	 * @param version
 	 * @return
 	 */
 	public static boolean[] byteModeEncoding(String input, int version) {
+		return byteModeEncoding(input, version, CorrectionLvl.L);
+	}
+
+	/**
+	 * Encode the input in byte mode with the given error correction level
+	 * 
+	 * @param input
+	 *            the string to encode, truncated to the capacity of the version
+	 * @param version
+	 *            the version of the QR code, between 1 and 40
+	 * @param lvl
+	 *            the error correction level
+	 * @return the bits of the interleaved data and error correction codewords
+	 */
+	public static boolean[] byteModeEncoding(String input, int version, CorrectionLvl lvl) {
 		
-	    final int MAX_CHAR_COUNT = QRCodeInfos.getMaxInputLength(version);
-	    final int MAX_BYTE_COUNT = QRCodeInfos.getCodeWordsLength(version);
-	    final int ECC_COUNT = QRCodeInfos.getECCLength(version);
+	    final int MAX_CHAR_COUNT = QRCodeInfos.getMaxInputLength(version, lvl);
+	    final int MAX_BYTE_COUNT = QRCodeInfos.getDataCodewords(version, lvl);
 	    
 	    final int[] ENCODED_STRING = encodeString(input, MAX_CHAR_COUNT);
-	    final int[] ENCODED_WITH_INFOS = addInformations(ENCODED_STRING);
+	    final int[] ENCODED_WITH_INFOS = addInformations(ENCODED_STRING, version);
 	    final int[] ENCODED_PADDED = fillSequence(ENCODED_WITH_INFOS, MAX_BYTE_COUNT);
-	    final int[] ENCODED_PADDED_ECC = addErrorCorrection(ENCODED_PADDED, ECC_COUNT);
+	    final int[] ENCODED_PADDED_ECC = addErrorCorrection(ENCODED_PADDED, version, lvl);
 	 
 		return bytesToBinaryArray(ENCODED_PADDED_ECC);
 	}
 
+	/**
+	 * Encode the input in byte mode into a bit buffer, without going through a
+	 * boolean array
+	 * 
+	 * @param input
+	 *            the string to encode
+	 * @param version
+	 *            the version of the QR code
+	 * @param output
+	 *            the buffer to which the encoded bits are appended
+	 */
+	public static void byteModeEncoding(String input, int version, BitBuffer output) {
+		byteModeEncoding(input, version, CorrectionLvl.L, output);
+	}
+
+	/**
+	 * Encode the input in byte mode with the given error correction level into
+	 * a bit buffer
+	 * 
+	 * @param input
+	 *            the string to encode, truncated to the capacity of the version
+	 * @param version
+	 *            the version of the QR code, between 1 and 40
+	 * @param lvl
+	 *            the error correction level
+	 * @param output
+	 *            the buffer to which the encoded bits are appended
+	 */
+	public static void byteModeEncoding(String input, int version, CorrectionLvl lvl, BitBuffer output) {
+		
+	    final int MAX_CHAR_COUNT = QRCodeInfos.getMaxInputLength(version, lvl);
+	    final int MAX_BYTE_COUNT = QRCodeInfos.getDataCodewords(version, lvl);
+	    
+	    final int[] ENCODED_STRING = encodeString(input, MAX_CHAR_COUNT);
+	    final int[] ENCODED_WITH_INFOS = addInformations(ENCODED_STRING, version);
+	    final int[] ENCODED_PADDED = fillSequence(ENCODED_WITH_INFOS, MAX_BYTE_COUNT);
+	    final int[] ENCODED_PADDED_ECC = addErrorCorrection(ENCODED_PADDED, version, lvl);
+	    
+	    bytesToBitBuffer(ENCODED_PADDED_ECC, output);
+	}
+
+	/**
+	 * Encode the input in byte mode into the smallest version holding it at
+	 * the given error correction level. Unlike the encodings with an explicit
+	 * version, the input is never truncated.
+	 * 
+	 * @param input
+	 *            the string to encode
+	 * @param lvl
+	 *            the error correction level
+	 * @param output
+	 *            the buffer to which the encoded bits are appended
+	 * @return the version chosen for the QR code
+	 * @throws DataTooLongException
+	 *             if the input does not fit in version 40
+	 */
+	public static int byteModeEncoding(String input, CorrectionLvl lvl, BitBuffer output) {
+		
+	    final int[] ENCODED_STRING = encodeString(input, Integer.MAX_VALUE);
+	    final int VERSION = QRCodeInfos.getMinimumVersion(version -> byteModeBitCost(ENCODED_STRING.length, version), lvl);
+	    
+	    final int[] ENCODED_WITH_INFOS = addInformations(ENCODED_STRING, VERSION);
+	    final int[] ENCODED_PADDED = fillSequence(ENCODED_WITH_INFOS, QRCodeInfos.getDataCodewords(VERSION, lvl));
+	    final int[] ENCODED_PADDED_ECC = addErrorCorrection(ENCODED_PADDED, VERSION, lvl);
+	    
+	    bytesToBitBuffer(ENCODED_PADDED_ECC, output);
+	    return VERSION;
+	}
+
+	/**
+	 * Compute the exact number of bits of a byte mode segment: the mode
+	 * indicator, the character count indicator and the bytes. The terminator
+	 * is not counted, it is shortened or dropped when the symbol is full.
+	 * 
+	 * @param byteCount
+	 *            the number of bytes of the data
+	 * @param version
+	 *            the version of the QR code, between 1 and 40
+	 * @return the number of bits of the segment
+	 */
+	public static int byteModeBitCost(int byteCount, int version) {
+		return Mode.BYTE.getBitCost(byteCount, version);
+	}
+
+	/**
+	 * Encode the input as the sequence of numeric, alphanumeric, byte and
+	 * kanji segments taking the fewest bits, into the smallest version holding
+	 * it at the given error correction level. Texts having characters neither
+	 * in ISO-8859-1 nor kanji are written in UTF-8, behind an ECI header.
+	 * 
+	 * @param input
+	 *            the string to encode
+	 * @param lvl
+	 *            the error correction level
+	 * @param output
+	 *            the buffer to which the encoded bits are appended
+	 * @return the version chosen for the QR code
+	 * @throws DataTooLongException
+	 *             if the input does not fit in version 40
+	 */
+	public static int encode(String input, CorrectionLvl lvl, BitBuffer output) {
+		
+		final EncoderContext CONTEXT = EncoderContext.current();
+		final Segmenter SEGMENTER = CONTEXT.segmenter();
+		final int VERSION = QRCodeInfos.getMinimumVersion(version -> SEGMENTER.getBitCost(input, version), lvl);
+		
+		encode(input, CONTEXT, VERSION, lvl, output);
+		return VERSION;
+	}
+
+	/**
+	 * Encode the input as the sequence of segments taking the fewest bits,
+	 * into the given version
+	 * 
+	 * @param input
+	 *            the string to encode
+	 * @param version
+	 *            the version of the QR code, between 1 and 40
+	 * @param lvl
+	 *            the error correction level
+	 * @param output
+	 *            the buffer to which the encoded bits are appended
+	 * @throws DataTooLongException
+	 *             if the input does not fit in the version
+	 */
+	public static void encode(String input, int version, CorrectionLvl lvl, BitBuffer output) {
+		
+		final EncoderContext CONTEXT = EncoderContext.current();
+		final int BIT_COST = CONTEXT.segmenter().getBitCost(input, version);
+		if (BIT_COST > QRCodeInfos.getDataBits(version, lvl)) {
+			throw new DataTooLongException(BIT_COST, QRCodeInfos.getDataBits(version, lvl));
+		}
+		
+		encode(input, CONTEXT, version, lvl, output);
+	}
+
+	/**
+	 * Run the pipeline in the scratch storage of the context, only the output
+	 * buffer may grow
+	 */
+	private static void encode(String input, EncoderContext context, int version, CorrectionLvl lvl, BitBuffer output) {
+		
+		final BitBuffer SEGMENTS = context.segments();
+		context.segmenter().appendSegments(input, version, SEGMENTS);
+		
+		final int[] DATA_CODEWORDS = context.dataCodewords();
+		final int[] CODEWORDS = context.codewords();
+		toDataCodewords(SEGMENTS, version, lvl, DATA_CODEWORDS);
+		BlockInterleaver.interleave(DATA_CODEWORDS, version, lvl, CODEWORDS, context);
+		bytesToBitBuffer(CODEWORDS, QRCodeInfos.getTotalCodewords(version), output);
+	}
+
+	/**
+	 * @param c
+	 *            a character
+	 * @return true if the character is a digit, encodable in numeric mode
+	 */
+	public static boolean isNumeric(char c) {
+		// The digits are the values 0 to 9 of the alphanumeric charset, -1 becomes 255
+		return c < 128 && (ALPHANUMERIC_VALUES[c] & 0xFF) < 10;
+	}
+
+	/**
+	 * @param c
+	 *            a character
+	 * @return true if the character belongs to the 45 characters of the
+	 *         alphanumeric mode: digits, upper case letters and " $%*+-./:"
+	 */
+	public static boolean isAlphanumeric(char c) {
+		return c < 128 && ALPHANUMERIC_VALUES[c] >= 0;
+	}
+
+	/**
+	 * @param c
+	 *            a character
+	 * @return true if the character has a double byte Shift JIS code that the
+	 *         kanji mode can encode
+	 */
+	public static boolean isKanji(char c) {
+		// No ISO-8859-1 character is a kanji, the table is not built for them
+		return c > 0xFF && KanjiTable.get(c) >= 0;
+	}
+
+	/**
+	 * Find the most compact mode able to represent every character of the input
+	 * 
+	 * @param input
+	 *            the characters to encode
+	 * @return NUMERIC if the input only holds digits, ALPHANUMERIC if it only
+	 *         holds characters of the alphanumeric charset, BYTE otherwise
+	 */
+	public static Mode getMode(CharSequence input) {
+		
+		Mode mode = Mode.NUMERIC;
+		for (int i = 0; i < input.length(); ++i) {
+			final char C = input.charAt(i);
+			if (!isAlphanumeric(C)) {
+				return Mode.BYTE;
+			}
+			if (!isNumeric(C)) {
+				mode = Mode.ALPHANUMERIC;
+			}
+		}
+		return mode;
+	}
+
+	/**
+	 * Append a whole segment: the mode indicator, the character count
+	 * indicator of the version and the characters input[from..to[
+	 * 
+	 * @param mode
+	 *            the mode of the segment
+	 * @param input
+	 *            the characters to encode
+	 * @param from
+	 *            index of the first character of the segment
+	 * @param to
+	 *            index following the last character of the segment
+	 * @param version
+	 *            the version of the QR code, between 1 and 40
+	 * @param output
+	 *            the buffer to which the segment is appended
+	 */
+	public static void appendSegment(Mode mode, CharSequence input, int from, int to, int version, BitBuffer output) {
+		
+		appendSegmentHeader(mode, to - from, version, output);
+		
+		switch (mode) {
+			case NUMERIC:
+				appendNumeric(input, from, to, output);
+				break;
+			case ALPHANUMERIC:
+				appendAlphanumeric(input, from, to, output);
+				break;
+			case KANJI:
+				appendKanji(input, from, to, output);
+				break;
+			default:
+				appendBytes(input, from, to, output);
+				break;
+		}
+	}
+
+	/**
+	 * Append the header of a segment: the mode indicator and the character
+	 * count indicator of the version
+	 * 
+	 * @param mode
+	 *            the mode of the segment
+	 * @param count
+	 *            the number of characters of the segment (bytes in byte mode)
+	 * @param version
+	 *            the version of the QR code, between 1 and 40
+	 * @param output
+	 *            the buffer to which the header is appended
+	 */
+	public static void appendSegmentHeader(Mode mode, int count, int version, BitBuffer output) {
+		
+		final int COUNT_BITS = mode.getCountBits(version);
+		if (count >= 1 << COUNT_BITS) {
+			throw new IllegalArgumentException("A segment of version " + version + " holds at most " + ((1 << COUNT_BITS) - 1) + " characters");
+		}
+		output.appendBits(mode.getIndicator(), 4);
+		output.appendBits(count, COUNT_BITS);
+	}
+
+	/**
+	 * Append an ECI header, telling the reader which character set the bytes
+	 * of the following byte mode segments use
+	 * 
+	 * @param assignment
+	 *            the ECI assignment number, e.g. UTF8_ECI
+	 * @param output
+	 *            the buffer to which the header is appended
+	 */
+	public static void appendECI(int assignment, BitBuffer output) {
+		
+		output.appendBits(ECI_MODE_INDICATOR, 4);
+		// The designator takes 1, 2 or 3 bytes, its leading bits give its length
+		if (assignment < 0) {
+			throw new IllegalArgumentException("Invalid ECI assignment number " + assignment);
+		} else if (assignment < 1 << 7) {
+			output.appendBits(assignment, 8);
+		} else if (assignment < 1 << 14) {
+			output.appendBits(0b10 << 14 | assignment, 16);
+		} else if (assignment < 1_000_000) {
+			output.appendBits(0b110 << 21 | assignment, 24);
+		} else {
+			throw new IllegalArgumentException("Invalid ECI assignment number " + assignment);
+		}
+	}
+
+	/**
+	 * @param input
+	 *            a text
+	 * @return true if every character of the text belongs to ISO-8859-1, the
+	 *         default character set of the byte mode
+	 */
+	public static boolean isLatin1(CharSequence input) {
+		for (int i = 0; i < input.length(); ++i) {
+			if (input.charAt(i) > 0xFF) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Count the UTF-8 bytes of a character. The 4 bytes of a surrogate pair
+	 * are counted on its high surrogate, an unpaired surrogate is replaced by
+	 * '?' (1 byte) like CharsetEncoder does.
+	 * 
+	 * @param input
+	 *            a text
+	 * @param i
+	 *            the index of the character
+	 * @return the number of UTF-8 bytes of input[i]
+	 */
+	public static int utf8Length(CharSequence input, int i) {
+		
+		final char C = input.charAt(i);
+		if (C < 0x80) {
+			return 1;
+		} else if (C < 0x800) {
+			return 2;
+		} else if (Character.isHighSurrogate(C)) {
+			return (i + 1 < input.length() && Character.isLowSurrogate(input.charAt(i + 1))) ? 4 : 1;
+		} else if (Character.isLowSurrogate(C)) {
+			return (i > 0 && Character.isHighSurrogate(input.charAt(i - 1))) ? 0 : 1;
+		}
+		return 3;
+	}
+
+	/**
+	 * Pack the digits input[from..to[ by groups of 3 into 10 bits, a last group
+	 * of 2 or 1 digits into 7 or 4 bits
+	 * 
+	 * @param input
+	 *            the characters to encode, digits only in the range
+	 * @param from
+	 *            index of the first digit
+	 * @param to
+	 *            index following the last digit
+	 * @param output
+	 *            the buffer to which the bits are appended
+	 */
+	public static void appendNumeric(CharSequence input, int from, int to, BitBuffer output) {
+		
+		int group = 0;
+		int groupLength = 0;
+		for (int i = from; i < to; ++i) {
+			group = group * 10 + numericValue(input.charAt(i));
+			if (++groupLength == 3) {
+				output.appendBits(group, 10);
+				group = 0;
+				groupLength = 0;
+			}
+		}
+		if (groupLength > 0) {
+			output.appendBits(group, 1 + 3 * groupLength);
+		}
+	}
+
+	/**
+	 * Pack the characters input[from..to[ by pairs into 11 bits (45 * first +
+	 * second), a last single character into 6 bits
+	 * 
+	 * @param input
+	 *            the characters to encode, of the alphanumeric charset only in
+	 *            the range
+	 * @param from
+	 *            index of the first character
+	 * @param to
+	 *            index following the last character
+	 * @param output
+	 *            the buffer to which the bits are appended
+	 */
+	public static void appendAlphanumeric(CharSequence input, int from, int to, BitBuffer output) {
+		
+		int i = from;
+		for (; i + 1 < to; i += 2) {
+			output.appendBits(45 * alphanumericValue(input.charAt(i)) + alphanumericValue(input.charAt(i + 1)), 11);
+		}
+		if (i < to) {
+			output.appendBits(alphanumericValue(input.charAt(i)), 6);
+		}
+	}
+
+	/**
+	 * Append the characters input[from..to[ as ISO-8859-1 bytes, the
+	 * characters out of its range being replaced by '?' like in encodeString()
+	 * 
+	 * @param input
+	 *            the characters to encode
+	 * @param from
+	 *            index of the first character
+	 * @param to
+	 *            index following the last character
+	 * @param output
+	 *            the buffer to which the bits are appended
+	 */
+	public static void appendBytes(CharSequence input, int from, int to, BitBuffer output) {
+		
+		for (int i = from; i < to; ++i) {
+			final char C = input.charAt(i);
+			output.appendBits(C <= 0xFF ? C : '?', 8);
+		}
+	}
+
+	/**
+	 * Append the 13 bits value of each character of input[from..to[, computed
+	 * from its Shift JIS code by KanjiTable
+	 * 
+	 * @param input
+	 *            the characters to encode, kanji only in the range
+	 * @param from
+	 *            index of the first character
+	 * @param to
+	 *            index following the last character
+	 * @param output
+	 *            the buffer to which the bits are appended
+	 */
+	public static void appendKanji(CharSequence input, int from, int to, BitBuffer output) {
+		
+		for (int i = from; i < to; ++i) {
+			final int VALUE = KanjiTable.get(input.charAt(i));
+			if (VALUE < 0) {
+				throw new IllegalArgumentException("'" + input.charAt(i) + "' cannot be encoded in kanji mode");
+			}
+			output.appendBits(VALUE, 13);
+		}
+	}
+
+	private static int numericValue(char c) {
+		if (!isNumeric(c)) {
+			throw new IllegalArgumentException("'" + c + "' cannot be encoded in numeric mode");
+		}
+		return ALPHANUMERIC_VALUES[c];
+	}
+
+	private static int alphanumericValue(char c) {
+		if (!isAlphanumeric(c)) {
+			throw new IllegalArgumentException("'" + c + "' cannot be encoded in alphanumeric mode");
+		}
+		return ALPHANUMERIC_VALUES[c];
+	}
+
+	/**
+	 * Turn the segments into the data codewords of the version: add the
+	 * terminator (up to 4 bits, as many as fit), 0 bits up to the end of the
+	 * last byte, then the padding bytes 236 and 17 alternately
+	 * 
+	 * @param segments
+	 *            the bits of all the segments of the data
+	 * @param version
+	 *            the version of the QR code, between 1 and 40
+	 * @param lvl
+	 *            the error correction level
+	 * @return the data codewords, ready for addErrorCorrection()
+	 */
+	public static int[] toDataCodewords(BitBuffer segments, int version, CorrectionLvl lvl) {
+		
+		int[] codewords = new int[QRCodeInfos.getDataCodewords(version, lvl)];
+		toDataCodewords(segments, version, lvl, codewords);
+		return codewords;
+	}
+
+	/**
+	 * Turn the segments into the data codewords of the version, see
+	 * toDataCodewords(BitBuffer, int, CorrectionLvl)
+	 * 
+	 * @param segments
+	 *            the bits of all the segments of the data
+	 * @param version
+	 *            the version of the QR code, between 1 and 40
+	 * @param lvl
+	 *            the error correction level
+	 * @param codewords
+	 *            the destination array, at least as long as the number of data
+	 *            codewords of the version
+	 */
+	public static void toDataCodewords(BitBuffer segments, int version, CorrectionLvl lvl, int[] codewords) {
+		
+		final int SIZE = segments.size();
+		final int CAPACITY = QRCodeInfos.getDataBits(version, lvl);
+		if (SIZE > CAPACITY) {
+			throw new DataTooLongException(SIZE, CAPACITY);
+		}
+		
+		// The terminator and the bits completing the last byte are all 0
+		final int USED_CODEWORDS = (Math.min(SIZE + 4, CAPACITY) + 7) / 8;
+		final int LENGTH = CAPACITY / 8;
+		
+		for (int i = 0; i < USED_CODEWORDS; ++i) {
+			final int REMAINING = SIZE - 8 * i;
+			if (REMAINING >= 8) {
+				codewords[i] = segments.getBits(8 * i, 8);
+			} else if (REMAINING > 0) {
+				codewords[i] = segments.getBits(8 * i, REMAINING) << (8 - REMAINING);
+			} else {
+				codewords[i] = 0;
+			}
+		}
+		for (int i = USED_CODEWORDS; i < LENGTH; ++i) {
+			codewords[i] = ((i - USED_CODEWORDS) % 2 == 0) ? 236 : 17;
+		}
+	}
+
 	/**
 	 * @param input
 	 *            The string to convert to ISO-8859-1
@@ -37,20 +582,34 @@ public final class DataEncoding {
 	 */
 	public static int[] encodeString(String input, int maxLength) {
 		
-		byte[] tabByte = input.getBytes(StandardCharsets.ISO_8859_1);
-		
-		// The length of the "encoded" array is the smallest value
-		// between tabByte's length and the maxLength parameter.
-		final int ENCODED_LENGTH = Math.min(tabByte.length, maxLength);
-		int[] encoded = new int[ENCODED_LENGTH];
+		// Count the bytes first, to fill the result without an intermediate byte array.
+		// A surrogate pair is a single unmappable character: a single '?'
+		final int LENGTH = input.length();
+		int byteCount = 0;
+		for (int i = 0; i < LENGTH && byteCount < maxLength; ++i) {
+			if (isSurrogatePair(input, i)) {
+				++i;
+			}
+			++byteCount;
+		}
 		
-		for (int i = 0; i < ENCODED_LENGTH; ++i) {
-			encoded[i] = toInt(tabByte[i]);
+		int[] encoded = new int[byteCount];
+		for (int i = 0, j = 0; j < byteCount; ++i, ++j) {
+			final char C = input.charAt(i);
+			if (isSurrogatePair(input, i)) {
+				++i;
+			}
+			encoded[j] = C <= 0xFF ? C : '?';
 		}
 		
 		return encoded;
 	}
 
+	private static boolean isSurrogatePair(CharSequence input, int i) {
+		return Character.isHighSurrogate(input.charAt(i)) && i + 1 < input.length()
+				&& Character.isLowSurrogate(input.charAt(i + 1));
+	}
+
 	/**
 	 * Add the 16 bits information data and concatenate the bytes to it
 	 * 
@@ -59,24 +618,46 @@ public final class DataEncoding {
 	 * @return The input bytes with an header giving the type and size of the data
 	 */
 	public static int[] addInformations(int[] inputBytes) {
+		return addInformations(inputBytes, 1);
+	}
+
+	/**
+	 * Add the mode indicator and the character count indicator of the version
+	 * (8 bits up to version 9, 16 bits above) in front of the bytes, and the
+	 * '0000' terminator after them
+	 * 
+	 * @param inputBytes
+	 *            the data byte sequence
+	 * @param version
+	 *            the version of the QR code, between 1 and 40
+	 * @return The input bytes with an header giving the type and size of the data
+	 */
+	public static int[] addInformations(int[] inputBytes, int version) {
 	 
 		final int BYTE_MODE_FLAG = 0b0100;
+		final int COUNT_BITS = QRCodeInfos.getByteCountBits(version);
 		final int INPUT_BYTES_LENGTH = inputBytes.length;
-		final int DATA_LENGTH = INPUT_BYTES_LENGTH + 2;
-		
-		int[] data = new int[DATA_LENGTH];
-		
-		// Fill the first byte (byte mode flag + 4 MSB of the length of the data)
-		data[0] = (BYTE_MODE_FLAG << 4) | ((INPUT_BYTES_LENGTH & 0xF0) >> 4);
-		// Fill the second byte (4 LSB of the length of the data + 4 MSB of the first data byte)
-		data[1] = ((INPUT_BYTES_LENGTH & 0x0F) << 4) | ((inputBytes[0] & 0xF0) >> 4);
-		// Fill the data from the third byte to the (DATA_LENGTH - 1)-th byte
-        for (int i = 2; i < DATA_LENGTH - 1; ++i) {
-            // We offset i by -2 and -1 because of the header which consists of ~2 bytes
-            data[i] = ((inputBytes[i - 2] & 0x0F) << 4) | ((inputBytes[i - 1] & 0xF0) >> 4);
-        }
-        // Fill the last byte and shift left to add the '0000' end sequence
-        data[DATA_LENGTH - 1] = (inputBytes[INPUT_BYTES_LENGTH - 1] & 0x0F) << 4;
+		if (INPUT_BYTES_LENGTH >= 1 << COUNT_BITS) {
+			throw new IllegalArgumentException("At most " + ((1 << COUNT_BITS) - 1) + " bytes can be encoded in version " + version);
+		}
+		
+		// The header is 12 or 20 bits long: whole bytes followed by one nibble
+		final int HEADER = (BYTE_MODE_FLAG << COUNT_BITS) | INPUT_BYTES_LENGTH;
+		final int HEADER_BYTES = COUNT_BITS / 8;
+		
+		int[] data = new int[HEADER_BYTES + INPUT_BYTES_LENGTH + 1];
+		for (int i = 0; i < HEADER_BYTES; ++i) {
+			data[i] = (HEADER >> (COUNT_BITS - 4 - 8 * i)) & 0xFF;
+		}
+		
+		// Every byte is shifted by the last nibble of the header
+		int nibble = HEADER & 0x0F;
+		for (int i = 0; i < INPUT_BYTES_LENGTH; ++i) {
+			data[HEADER_BYTES + i] = (nibble << 4) | ((inputBytes[i] & 0xF0) >> 4);
+			nibble = inputBytes[i] & 0x0F;
+		}
+		// Shift the last nibble left to add the '0000' end sequence
+		data[HEADER_BYTES + INPUT_BYTES_LENGTH] = nibble << 4;
 		
 		return data;
 	}
@@ -132,6 +713,23 @@ public final class DataEncoding {
 		return dataWithCorrection;
 	}
 
+	/**
+	 * Split the data into the error correction blocks of the given version,
+	 * add the error correction of each block and interleave the codewords
+	 * 
+	 * @param encodedData
+	 *            The byte array representing the data encoded, padded to the
+	 *            capacity of the version
+	 * @param version
+	 *            the version of the QR code
+	 * @param lvl
+	 *            the error correction level
+	 * @return the interleaved data and error correction codewords
+	 */
+	public static int[] addErrorCorrection(int[] encodedData, int version, CorrectionLvl lvl) {
+		return BlockInterleaver.interleave(encodedData, version, lvl);
+	}
+
 	/**
 	 * Encode the byte array into a binary array represented with boolean using the
 	 * most significant bit first.
@@ -155,4 +753,35 @@ public final class DataEncoding {
 		return binaryArray;
 	}
 
+	/**
+	 * Append the bytes to a bit buffer, most significant bit first
+	 * 
+	 * @param data
+	 *            an array of bytes
+	 * @param output
+	 *            the buffer to which the bits are appended
+	 */
+	public static void bytesToBitBuffer(int[] data, BitBuffer output) {
+		bytesToBitBuffer(data, data.length, output);
+	}
+
+	/**
+	 * Append the first bytes of an array to a bit buffer, most significant bit
+	 * first
+	 * 
+	 * @param data
+	 *            an array of bytes
+	 * @param length
+	 *            the number of bytes to append
+	 * @param output
+	 *            the buffer to which the bits are appended
+	 */
+	public static void bytesToBitBuffer(int[] data, int length, BitBuffer output) {
+		
+		output.ensureCapacity(output.size() + length * 8);
+		for (int i = 0; i < length; ++i) {
+			output.appendBits(data[i], 8);
+		}
+	}
+
 }
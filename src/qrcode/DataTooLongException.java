@@ -0,0 +1,34 @@
+package qrcode;
+
+/**
+ * Thrown when the data does not fit in the largest QR code of the requested
+ * error correction level, instead of silently truncating it.
+ */
+public class DataTooLongException extends IllegalArgumentException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int bitCount;
+	private final int capacity;
+
+	public DataTooLongException(int bitCount, int capacity) {
+		super("The data needs " + bitCount + " bits, at most " + capacity + " bits fit in a QR code");
+		this.bitCount = bitCount;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @return the number of bits the data needs in the largest version
+	 */
+	public int getBitCount() {
+		return bitCount;
+	}
+
+	/**
+	 * @return the number of data bits of the largest version
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+}
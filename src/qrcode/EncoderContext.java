@@ -0,0 +1,190 @@
+package qrcode;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import qrcode.QRCodeInfos.CorrectionLvl;
+import reedsolomon.ReedSolomonEncoder;
+
+/**
+ * Scratch storage of the encoding pipeline: the segmenter, the segment
+ * buffer, the data and interleaved codewords, the Reed-Solomon storage, the
+ * matrices of the mask search and the penalty evaluator. Everything is sized
+ * for version 40 or built the first time a version needs it, after which
+ * encoding allocates nothing.
+ *
+ * A context must be used by one encoding at a time. There are two ways to get
+ * one:
+ * <ul>
+ * <li>current() gives the context of the calling thread, it is what the
+ * static entry points of DataEncoding and MatrixConstruction use. It suits
+ * pools of platform threads.</li>
+ * <li>acquire() takes a context from a shared pool, release() gives it back.
+ * It suits virtual threads and other short-lived threads, which would
+ * otherwise each build their own. The pool is a lock-free deque, the most
+ * recently released context being handed out first.</li>
+ * </ul>
+ */
+public final class EncoderContext {
+
+	/*
+	 * Contexts kept by the pool beyond this number are left to the GC
+	 */
+	private static final int MAX_POOLED = 4 * Runtime.getRuntime().availableProcessors();
+
+	private static final ConcurrentLinkedDeque<EncoderContext> POOL = new ConcurrentLinkedDeque<>();
+	private static final AtomicInteger POOLED = new AtomicInteger();
+
+	private static final ThreadLocal<EncoderContext> CURRENT = new ThreadLocal<EncoderContext>() {
+		@Override
+		protected EncoderContext initialValue() {
+			return new EncoderContext();
+		}
+	};
+
+	private final Segmenter segmenter = new Segmenter();
+	private final BitBuffer segments = new BitBuffer(QRCodeInfos.getDataBits(QRCodeInfos.MAX_VERSION, CorrectionLvl.L));
+	private final int[] dataCodewords = new int[QRCodeInfos.getDataCodewords(QRCodeInfos.MAX_VERSION, CorrectionLvl.L)];
+	private final int[] codewords = new int[QRCodeInfos.getTotalCodewords(QRCodeInfos.MAX_VERSION)];
+
+	/*
+	 * Position and length of each block in the data codewords
+	 */
+	private final int[] blockOffsets = new int[QRCodeInfos.getBlockCount(QRCodeInfos.MAX_VERSION, CorrectionLvl.H)];
+	private final int[] blockLengths = new int[blockOffsets.length];
+
+	/*
+	 * encoders[n] and registers[n] are the storage of the scalar and SWAR
+	 * backends generating n ECC per block
+	 */
+	private final ReedSolomonEncoder[] encoders = new ReedSolomonEncoder[31];
+	private final long[][] registers = new long[31][];
+
+	/*
+	 * unmasked[v] and candidates[v] are the matrices of the mask search in
+	 * version v: the data placed once, and the copy each mask is tried on
+	 */
+	private final BitMatrix[] unmasked = new BitMatrix[QRCodeInfos.MAX_VERSION + 1];
+	private final BitMatrix[] candidates = new BitMatrix[QRCodeInfos.MAX_VERSION + 1];
+	private final long[] maskOrder = new long[8];
+	private final PenaltyEvaluator evaluator = new PenaltyEvaluator();
+
+	/**
+	 * Create an empty context, its storage is filled as it is used
+	 */
+	public EncoderContext() {
+	}
+
+	/**
+	 * @return the context of the calling thread
+	 */
+	public static EncoderContext current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Take a context from the shared pool, or create one if it is empty
+	 *
+	 * @return a context for the exclusive use of the caller until release()
+	 */
+	public static EncoderContext acquire() {
+		final EncoderContext CONTEXT = POOL.pollFirst();
+		if (CONTEXT == null) {
+			return new EncoderContext();
+		}
+		POOLED.decrementAndGet();
+		return CONTEXT;
+	}
+
+	/**
+	 * Give a context back to the shared pool. It must not be used afterwards.
+	 *
+	 * @param context
+	 *            a context obtained with acquire()
+	 */
+	public static void release(EncoderContext context) {
+		if (POOLED.incrementAndGet() <= MAX_POOLED) {
+			POOL.offerFirst(context);
+		} else {
+			POOLED.decrementAndGet();
+		}
+	}
+
+	Segmenter segmenter() {
+		return segmenter;
+	}
+
+	/**
+	 * @return the segment buffer, cleared
+	 */
+	BitBuffer segments() {
+		segments.clear();
+		return segments;
+	}
+
+	/**
+	 * @return an array holding the data codewords of any version
+	 */
+	int[] dataCodewords() {
+		return dataCodewords;
+	}
+
+	/**
+	 * @return an array holding the codewords of any version
+	 */
+	int[] codewords() {
+		return codewords;
+	}
+
+	int[] blockOffsets() {
+		return blockOffsets;
+	}
+
+	int[] blockLengths() {
+		return blockLengths;
+	}
+
+	/**
+	 * @return the scalar encoder generating eccLength ECC per block
+	 */
+	ReedSolomonEncoder encoder(int eccLength) {
+		if (encoders[eccLength] == null) {
+			encoders[eccLength] = new ReedSolomonEncoder(eccLength);
+		}
+		return encoders[eccLength];
+	}
+
+	/**
+	 * @return the SWAR register of eccLength ECC per block
+	 */
+	long[] register(int eccLength) {
+		if (registers[eccLength] == null) {
+			registers[eccLength] = new long[eccLength];
+		}
+		return registers[eccLength];
+	}
+
+	BitMatrix unmasked(int version) {
+		return matrix(unmasked, version);
+	}
+
+	BitMatrix candidate(int version) {
+		return matrix(candidates, version);
+	}
+
+	long[] maskOrder() {
+		return maskOrder;
+	}
+
+	PenaltyEvaluator evaluator() {
+		return evaluator;
+	}
+
+	private static BitMatrix matrix(BitMatrix[] matrices, int version) {
+		if (matrices[version] == null) {
+			matrices[version] = new BitMatrix(QRCodeInfos.getMatrixSize(version));
+		}
+		return matrices[version];
+	}
+
+}
@@ -0,0 +1,208 @@
+package qrcode;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Immutable function modules of a QR code version: Finder, Alignment and
+ * Timing patterns, separators, dark module, version information, and the
+ * modules reserved for the format information (left light, they depend on the
+ * mask and error correction level).
+ *
+ * Templates are built once per version and shared, a matrix is then obtained
+ * by copying the template and writing the format information.
+ */
+public final class FunctionTemplate {
+
+	private static final AtomicReferenceArray<FunctionTemplate> CACHE = new AtomicReferenceArray<>(41);
+
+	private final int version;
+	private final BitMatrix modules;
+	private final int[][] argb;
+	private final int[] dataPath;
+	private final long[][] maskPlanes;
+
+	private FunctionTemplate(int version) {
+		this.version = version;
+
+		int[][] matrix = MatrixConstruction.initializeMatrix(version);
+		MatrixConstruction.addFinderPatterns(matrix);
+		MatrixConstruction.addAlignmentPatterns(matrix, version);
+		MatrixConstruction.addTimingPatterns(matrix);
+		MatrixConstruction.addDarkModule(matrix);
+		MatrixConstruction.addVersionInformation(matrix, version);
+		reserveFormatInformation(matrix);
+
+		this.modules = BitMatrix.fromARGB(matrix);
+		this.argb = matrix;
+		this.dataPath = computeDataPath(modules);
+		this.maskPlanes = computeMaskPlanes(modules);
+	}
+
+	/**
+	 * Pack each of the 8 masks in the layout of a BitMatrix, restricted to the
+	 * data modules, so that masking is a XOR of the rows.
+	 */
+	private static long[][] computeMaskPlanes(BitMatrix modules) {
+		
+		final int SIZE = modules.getSize();
+		final int STRIDE = modules.getStride();
+		
+		long[][] planes = new long[8][SIZE * STRIDE];
+		for (int mask = 0; mask < 8; ++mask) {
+			for (int y = 0; y < SIZE; ++y) {
+				for (int x = 0; x < SIZE; ++x) {
+					if (!modules.isFunction(x, y) && MatrixConstruction.isMasked(x, y, mask)) {
+						planes[mask][y * STRIDE + (x >>> 6)] |= 1L << x;
+					}
+				}
+			}
+		}
+		return planes;
+	}
+
+	/**
+	 * Walk the zigzag path of the data modules once: 2-module columns from
+	 * right to left, skipping the vertical Timing Pattern, alternatively going
+	 * up and down, right module first.
+	 * 
+	 * @return the position of each data module in data bit order, as the index
+	 *         of its bit in the packed rows: y * stride * 64 + x
+	 */
+	private static int[] computeDataPath(BitMatrix modules) {
+		
+		final int SIZE = modules.getSize();
+		final int ROW_BITS = modules.getStride() * 64;
+		
+		int[] path = new int[SIZE * SIZE];
+		int length = 0;
+		
+		for (int right = SIZE - 1; right >= 1; right -= 2) {
+			if (right == 6) {
+				right = 5;
+			}
+			final boolean UPWARD = ((right + 1) & 2) == 0;
+			
+			for (int i = 0; i < SIZE; ++i) {
+				final int ROW = UPWARD ? SIZE - 1 - i : i;
+				for (int col = right; col >= right - 1; --col) {
+					if (!modules.isFunction(col, ROW)) {
+						path[length++] = ROW * ROW_BITS + col;
+					}
+				}
+			}
+		}
+		
+		return Arrays.copyOf(path, length);
+	}
+
+	/**
+	 * Get the template of a version, building it the first time only
+	 * 
+	 * @param version
+	 *            the version of the QR code
+	 * @return the shared template
+	 */
+	public static FunctionTemplate get(int version) {
+		if (version < 1 || version >= CACHE.length()) {
+			throw new IllegalArgumentException("The version has to be between 1 and " + (CACHE.length() - 1));
+		}
+
+		FunctionTemplate template = CACHE.get(version);
+		if (template == null) {
+			CACHE.compareAndSet(version, null, new FunctionTemplate(version));
+			template = CACHE.get(version);
+		}
+		return template;
+	}
+
+	/**
+	 * Mark the format information modules as light function modules
+	 */
+	private static void reserveFormatInformation(int[][] matrix) {
+		final int SIZE = matrix.length;
+		for (int i = 0; i < 9; ++i) {
+			if (i != 6) {
+				matrix[i][8] = MatrixConstruction.W;
+				matrix[8][i] = MatrixConstruction.W;
+			}
+		}
+		for (int i = 0; i < 8; ++i) {
+			matrix[SIZE - 1 - i][8] = MatrixConstruction.W;
+		}
+		for (int i = 0; i < 7; ++i) {
+			matrix[8][SIZE - 1 - i] = MatrixConstruction.W;
+		}
+	}
+
+	/**
+	 * @return the version of the template
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return the size of the matrix of the version
+	 */
+	public int getSize() {
+		return modules.getSize();
+	}
+
+	/**
+	 * Copy the function modules into a packed matrix of the same size
+	 * 
+	 * @param matrix
+	 *            the matrix to overwrite
+	 */
+	public void copyTo(BitMatrix matrix) {
+		matrix.copyFrom(modules);
+	}
+
+	/**
+	 * @return a new ARGB matrix holding the function modules, the data modules
+	 *         being empty (0)
+	 */
+	public int[][] toARGB() {
+		int[][] matrix = new int[argb.length][];
+		for (int x = 0; x < argb.length; ++x) {
+			matrix[x] = argb[x].clone();
+		}
+		return matrix;
+	}
+
+	/**
+	 * @return true if the module belongs to a function pattern or is reserved
+	 *         for the format information
+	 */
+	public boolean isFunction(int x, int y) {
+		return modules.isFunction(x, y);
+	}
+
+	/**
+	 * @return the number of modules available for the data (and remainder bits)
+	 */
+	public int getDataModuleCount() {
+		return dataPath.length;
+	}
+
+	/**
+	 * Give access to the placement path of the data bits, see computeDataPath().
+	 * The array is shared and must not be modified.
+	 */
+	int[] dataPath() {
+		return dataPath;
+	}
+
+	/**
+	 * Give access to the packed plane of a mask, the data modules to invert.
+	 * The array is shared and must not be modified.
+	 * 
+	 * @param mask
+	 *            the mask id, between 0 and 7
+	 */
+	long[] maskPlane(int mask) {
+		return maskPlanes[mask];
+	}
+
+}
@@ -0,0 +1,110 @@
+package qrcode;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * The 13 bits kanji mode value of each character having a double byte
+ * Shift JIS code in the ranges 0x8140 to 0x9FFC and 0xE040 to 0xEBBF.
+ *
+ * The table is built the first time it is used, by decoding every Shift JIS
+ * code of the ranges once, and then shared. It is split in 256 pages of 256
+ * characters, indexed by the high byte of the character, the pages without
+ * any kanji being left out.
+ */
+final class KanjiTable {
+
+	private static final int NONE = -1;
+
+	private KanjiTable() {
+	}
+
+	/*
+	 * Initialized when Holder is first accessed, the JVM guarantees it happens
+	 * once and is visible to every thread
+	 */
+	private static final class Holder {
+		private static final short[][] PAGES = pagesGenerator();
+	}
+
+	private static short[][] pagesGenerator() {
+
+		short[][] pages = new short[256][];
+		if (!Charset.isSupported("Shift_JIS")) {
+			return pages;
+		}
+
+		CharsetDecoder decoder = Charset.forName("Shift_JIS").newDecoder()
+				.onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+		ByteBuffer code = ByteBuffer.allocate(2);
+		CharBuffer decoded = CharBuffer.allocate(2);
+
+		for (int lead = 0x81; lead <= 0xEB; ++lead) {
+			if (lead > 0x9F && lead < 0xE0) {
+				continue;
+			}
+			for (int trail = 0x40; trail <= 0xFC; ++trail) {
+				if (trail == 0x7F || (lead << 8 | trail) > 0xEBBF) {
+					continue;
+				}
+				code.clear();
+				code.put((byte) lead).put((byte) trail).flip();
+				decoded.clear();
+				decoder.reset();
+				if (decoder.decode(code, decoded, true).isError() || decoded.position() != 1) {
+					continue;
+				}
+
+				final char C = decoded.get(0);
+				short[] page = pages[C >>> 8];
+				if (page == null) {
+					page = new short[256];
+					Arrays.fill(page, (short) NONE);
+					pages[C >>> 8] = page;
+				}
+				// Keep the first code of a character decoded from several ones
+				if (page[C & 0xFF] == NONE) {
+					page[C & 0xFF] = (short) value(lead << 8 | trail);
+				}
+			}
+		}
+		return pages;
+	}
+
+	/**
+	 * Compress a Shift JIS code into 13 bits: subtract the start of its range,
+	 * then multiply the high byte by 0xC0 and add the low byte
+	 */
+	private static int value(int shiftJIS) {
+		final int OFFSET = shiftJIS - (shiftJIS <= 0x9FFC ? 0x8140 : 0xC140);
+		return (OFFSET >>> 8) * 0xC0 + (OFFSET & 0xFF);
+	}
+
+	/**
+	 * Expand a kanji mode value back into its Shift JIS code
+	 *
+	 * @param value
+	 *            a 13 bits value returned by get()
+	 * @return the double byte Shift JIS code
+	 */
+	static int toShiftJIS(int value) {
+		final int OFFSET = (value / 0xC0) << 8 | (value % 0xC0);
+		return OFFSET + (OFFSET < 0x1F00 ? 0x8140 : 0xC140);
+	}
+
+	/**
+	 * @param c
+	 *            a character
+	 * @return the 13 bits value of the character in kanji mode, -1 if kanji
+	 *         mode cannot encode it
+	 */
+	static int get(char c) {
+		final short[] PAGE = Holder.PAGES[c >>> 8];
+		return PAGE == null ? NONE : PAGE[c & 0xFF];
+	}
+
+}
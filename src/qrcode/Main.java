@@ -1,5 +1,7 @@
 package qrcode;
 
+import qrcode.QRCodeInfos.CorrectionLvl;
+
 public class Main {
 
 	public static final String INPUT =  "We <3 EPFL";
@@ -16,7 +18,8 @@ public class Main {
 		/*
 		 * Encoding
 		 */
-		boolean[] encodedData = DataEncoding.byteModeEncoding(INPUT, VERSION);
+		BitBuffer encodedData = new BitBuffer();
+		DataEncoding.encode(INPUT, VERSION, CorrectionLvl.L, encodedData);
 		
 		/*
 		 * image
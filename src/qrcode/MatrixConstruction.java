@@ -1,6 +1,10 @@
 package qrcode;
 
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import qrcode.QRCodeInfos.CorrectionLvl;
 
 import static qrcode.Util.*;
 
@@ -32,17 +36,87 @@ public class MatrixConstruction {
 	 * @return The matrix of the QR code
 	 */
 	public static int[][] renderQRCodeMatrix(int version, boolean[] data, int mask) {
+		return renderQRCodeMatrix(version, new BitBuffer(data), mask);
+	}
+
+	/**
+	 * Create the matrix of a QR code with the given data.
+	 * 
+	 * @param version
+	 *            The version of the QR code
+	 * @param data
+	 *            The data to be written on the QR code
+	 * @param mask
+	 *            The mask used on the data. If not valid (e.g: -1), then no mask is
+	 *            used.
+	 * @return The matrix of the QR code
+	 */
+	public static int[][] renderQRCodeMatrix(int version, BitBuffer data, int mask) {
+		return renderQRCodeMatrix(version, data, mask, CorrectionLvl.L);
+	}
+
+	/**
+	 * Create the matrix of a QR code with the given data, encoded with the
+	 * given error correction level.
+	 * 
+	 * @param version
+	 *            The version of the QR code
+	 * @param data
+	 *            The data to be written on the QR code
+	 * @param mask
+	 *            The mask used on the data. If not valid (e.g: -1), then mask 0 is
+	 *            used.
+	 * @param lvl
+	 *            The error correction level written in the format information
+	 * @return The matrix of the QR code
+	 */
+	public static int[][] renderQRCodeMatrix(int version, BitBuffer data, int mask, CorrectionLvl lvl) {
+		return renderBitMatrix(version, data, mask, lvl).toARGB();
+	}
+
+	/**
+	 * Create the matrix of a QR code with the given data, packed one bit per
+	 * module. Use BitMatrix.toARGB() to display or export it.
+	 * 
+	 * @param version
+	 *            The version of the QR code
+	 * @param data
+	 *            The data to be written on the QR code
+	 * @param mask
+	 *            The mask used on the data. If not valid (e.g: -1), then mask 0 is
+	 *            used.
+	 * @return The matrix of the QR code
+	 */
+	public static BitMatrix renderBitMatrix(int version, BitBuffer data, int mask) {
+		return renderBitMatrix(version, data, mask, CorrectionLvl.L);
+	}
+
+	/**
+	 * Create the packed matrix of a QR code with the given data, encoded with
+	 * the given error correction level.
+	 * 
+	 * @param version
+	 *            The version of the QR code
+	 * @param data
+	 *            The data to be written on the QR code
+	 * @param mask
+	 *            The mask used on the data. If not valid (e.g: -1), then mask 0 is
+	 *            used.
+	 * @param lvl
+	 *            The error correction level written in the format information
+	 * @return The matrix of the QR code
+	 */
+	public static BitMatrix renderBitMatrix(int version, BitBuffer data, int mask, CorrectionLvl lvl) {
 
 		final int MASK = (mask < 0 || mask > 7) ? 0 : mask;
 		/*
 		 * PART 2
 		 */
-		int[][] matrix = constructMatrix(version, MASK);
+		BitMatrix matrix = constructBitMatrix(version, MASK, lvl);
 		/*
 		 * PART 3
 		 */
 		addDataInformation(matrix, data, MASK);
-		evaluate(matrix);
 
 		return matrix;
 	}
@@ -59,7 +133,7 @@ public class MatrixConstruction {
 	 * Create a matrix (2D array) ready to accept data for a given version and mask
 	 * 
 	 * @param version
-	 *            the version number of QR code (has to be between 1 and 4 included)
+	 *            the version number of QR code (has to be between 1 and 40 included)
 	 * @param mask
 	 *            the mask id to use to mask the data modules. Has to be between 0
 	 *            and 7 included to have a valid matrix. If the mask id is not
@@ -69,18 +143,99 @@ public class MatrixConstruction {
 	 *         initialized. The modules where the data should be remain empty.
 	 */
 	public static int[][] constructMatrix(int version, int mask) {
+		return constructMatrix(version, mask, CorrectionLvl.L);
+	}
+
+	/**
+	 * Create a matrix (2D array) ready to accept data for a given version, mask
+	 * and error correction level
+	 * 
+	 * @param version
+	 *            the version number of QR code (has to be between 1 and 40 included)
+	 * @param mask
+	 *            the mask id written in the format information
+	 * @param lvl
+	 *            the error correction level written in the format information
+	 * @return the qrcode with the patterns and format information modules
+	 *         initialized. The modules where the data should be remain empty.
+	 */
+	public static int[][] constructMatrix(int version, int mask, CorrectionLvl lvl) {
 	
-		int[][] matrix = initializeMatrix(version);
+		// The patterns are drawn once per version by FunctionTemplate
+		int[][] matrix = FunctionTemplate.get(version).toARGB();
+		addFormatInformation(matrix, mask, lvl);
 		
-		addFinderPatterns(matrix);
-		addAlignmentPatterns(matrix, version);
-		addTimingPatterns(matrix);
-		addDarkModule(matrix);
-		addFormatInformation(matrix, mask);
+		return matrix;
+	}
+
+	/**
+	 * Create a packed matrix ready to accept data for a given version and mask.
+	 * The patterns and format information are marked as function modules.
+	 * 
+	 * @param version
+	 *            the version number of QR code
+	 * @param mask
+	 *            the mask id written in the format information
+	 * @return the packed qrcode with the function modules initialized
+	 */
+	public static BitMatrix constructBitMatrix(int version, int mask) {
+		return constructBitMatrix(version, mask, CorrectionLvl.L);
+	}
+
+	/**
+	 * Create a packed matrix ready to accept data for a given version, mask and
+	 * error correction level.
+	 * 
+	 * @param version
+	 *            the version number of QR code
+	 * @param mask
+	 *            the mask id written in the format information
+	 * @param lvl
+	 *            the error correction level written in the format information
+	 * @return the packed qrcode with the function modules initialized
+	 */
+	public static BitMatrix constructBitMatrix(int version, int mask, CorrectionLvl lvl) {
 		
+		BitMatrix matrix = new BitMatrix(QRCodeInfos.getMatrixSize(version));
+		constructBitMatrix(version, mask, lvl, matrix);
 		return matrix;
 	}
 
+	/**
+	 * Reset a packed matrix so that it is ready to accept data for a given
+	 * version and mask: copy the function modules of the version and write the
+	 * format information.
+	 * 
+	 * @param version
+	 *            the version number of QR code
+	 * @param mask
+	 *            the mask id written in the format information
+	 * @param matrix
+	 *            the matrix to overwrite, of the size of the version
+	 */
+	public static void constructBitMatrix(int version, int mask, BitMatrix matrix) {
+		constructBitMatrix(version, mask, CorrectionLvl.L, matrix);
+	}
+
+	/**
+	 * Reset a packed matrix so that it is ready to accept data for a given
+	 * version, mask and error correction level.
+	 * 
+	 * @param version
+	 *            the version number of QR code
+	 * @param mask
+	 *            the mask id written in the format information
+	 * @param lvl
+	 *            the error correction level written in the format information
+	 * @param matrix
+	 *            the matrix to overwrite, of the size of the version
+	 */
+	public static void constructBitMatrix(int version, int mask, CorrectionLvl lvl, BitMatrix matrix) {
+		
+		FunctionTemplate.get(version).copyTo(matrix);
+		addFormatInformation(matrix, mask, lvl);
+	}
+
 	/**
 	 * Create an empty 2d array of integers of the size needed for a QR code of the
 	 * given version
@@ -234,19 +389,27 @@ public class MatrixConstruction {
 	}
 
 	/**
-	 * Add the alignment pattern if needed, does nothing for version 1
+	 * Add the alignment patterns if needed, does nothing for version 1
 	 * 
 	 * @param matrix
 	 *            The 2D array to modify
 	 * @param version
-	 *            the version number of the QR code needs to be between 1 and 4
+	 *            the version number of the QR code needs to be between 1 and 40
 	 *            included
 	 */
 	public static void addAlignmentPatterns(int[][] matrix, int version) {
 		
-		if (version > 1) {
-			final int START_COORD = matrix.length - 9;
-			addPattern(matrix, Pattern.ALIGNMENT, START_COORD);
+		final int[] CENTERS = QRCodeInfos.getAlignmentCenters(version);
+		final int LAST = CENTERS.length - 1;
+		
+		for (int i = 0; i < CENTERS.length; ++i) {
+			for (int j = 0; j < CENTERS.length; ++j) {
+				// The three corners next to a Finder Pattern stay empty
+				final boolean ON_FINDER = (i == 0 && j == 0) || (i == 0 && j == LAST) || (i == LAST && j == 0);
+				if (!ON_FINDER) {
+					addPattern(matrix, Pattern.ALIGNMENT, CENTERS[i] - 2, CENTERS[j] - 2);
+				}
+			}
 		}
 		
 	}
@@ -284,7 +447,34 @@ public class MatrixConstruction {
 	}
 
 	/**
-	 * Add the format information to the matrix
+	 * Add the two version information blocks, from version 7 onwards: 6x3 next
+	 * to the bottom left Finder Pattern and its transpose next to the top right
+	 * one. Does nothing for lower versions.
+	 * 
+	 * @param matrix
+	 *            the 2-dimensional array representing the QR code to modify
+	 * @param version
+	 *            the version number of the QR code
+	 */
+	public static void addVersionInformation(int[][] matrix, int version) {
+		
+		if (!QRCodeInfos.hasVersionInformation(version)) {
+			return;
+		}
+		
+		final int VERSION_WORD = QRCodeInfos.getVersionWord(version);
+		final int OFFSET = matrix.length - 11;
+		
+		for (int i = 0; i < 18; ++i) {
+			// The least significant bit is at the top left of each block
+			final int COLOR = booleanToColor(((VERSION_WORD >>> i) & 1) != 0);
+			matrix[OFFSET + i % 3][i / 3] = COLOR;
+			matrix[i / 3][OFFSET + i % 3] = COLOR;
+		}
+	}
+
+	/**
+	 * Add the format information to the matrix, for error correction level L
 	 * 
 	 * @param matrix
 	 *            the 2-dimensional array representing the QR code to modify
@@ -292,35 +482,102 @@ public class MatrixConstruction {
 	 *            the mask id
 	 */
 	public static void addFormatInformation(int[][] matrix, int mask) {
+		addFormatInformation(matrix, mask, CorrectionLvl.L);
+	}
+
+	/**
+	 * Add the format information to the matrix
+	 * 
+	 * @param matrix
+	 *            the 2-dimensional array representing the QR code to modify
+	 * @param mask
+	 *            the mask id
+	 * @param lvl
+	 *            the error correction level
+	 */
+	public static void addFormatInformation(int[][] matrix, int mask, CorrectionLvl lvl) {
 		
-		boolean[] formatSequence = QRCodeInfos.getFormatSequence(mask);
+		final int FORMAT_WORD = QRCodeInfos.getFormatWord(mask, lvl);
 		
 		for (int i = 0; i < 6; ++i) {
 			// Fill the bottom of the top left Finder Pattern
-			matrix[i][8] = booleanToColor(formatSequence[i]);
+			matrix[i][8] = booleanToColor(formatBit(FORMAT_WORD, i));
 		}
 		for (int i = 14; i > 8; --i) {
 			// Fill the right side of the top left Finder Pattern
-			matrix[8][14 - i] = booleanToColor(formatSequence[i]);
+			matrix[8][14 - i] = booleanToColor(formatBit(FORMAT_WORD, i));
 		}
 		// Fill the missing modules arround the bottom right corner of
 		// the top left Finder Pattern
-		matrix[7][8] = booleanToColor(formatSequence[6]);
-		matrix[8][8] = booleanToColor(formatSequence[7]);
-		matrix[8][7] = booleanToColor(formatSequence[8]);
+		matrix[7][8] = booleanToColor(formatBit(FORMAT_WORD, 6));
+		matrix[8][8] = booleanToColor(formatBit(FORMAT_WORD, 7));
+		matrix[8][7] = booleanToColor(formatBit(FORMAT_WORD, 8));
 		
 		for (int i = 7; i < 15; ++i) {
 			// Fill the bottom of the top right Finder Pattern
 			final int OFFSET = matrix.length - 8 - 7;
-			matrix[i + OFFSET][8] = booleanToColor(formatSequence[i]);
+			matrix[i + OFFSET][8] = booleanToColor(formatBit(FORMAT_WORD, i));
 		}
 		for (int i = 0; i < 7; ++i) {
 			// Fill the right side of the bottom left Finder Pattern
 			final int OFFSET = matrix.length - 1;
-			matrix[8][OFFSET - i] = booleanToColor(formatSequence[i]);
+			matrix[8][OFFSET - i] = booleanToColor(formatBit(FORMAT_WORD, i));
+		}
+	}
+
+	/**
+	 * Add the format information of error correction level L to a packed matrix
+	 * 
+	 * @param matrix
+	 *            the packed QR code to modify
+	 * @param mask
+	 *            the mask id
+	 */
+	public static void addFormatInformation(BitMatrix matrix, int mask) {
+		addFormatInformation(matrix, mask, CorrectionLvl.L);
+	}
+
+	/**
+	 * Add the format information to a packed matrix, at the same positions as
+	 * addFormatInformation(int[][], int, CorrectionLvl)
+	 * 
+	 * @param matrix
+	 *            the packed QR code to modify
+	 * @param mask
+	 *            the mask id
+	 * @param lvl
+	 *            the error correction level
+	 */
+	public static void addFormatInformation(BitMatrix matrix, int mask, CorrectionLvl lvl) {
+		
+		final int FORMAT_WORD = QRCodeInfos.getFormatWord(mask, lvl);
+		final int SIZE = matrix.getSize();
+		
+		for (int i = 0; i < 6; ++i) {
+			matrix.setFunction(i, 8, formatBit(FORMAT_WORD, i));
+		}
+		for (int i = 14; i > 8; --i) {
+			matrix.setFunction(8, 14 - i, formatBit(FORMAT_WORD, i));
+		}
+		matrix.setFunction(7, 8, formatBit(FORMAT_WORD, 6));
+		matrix.setFunction(8, 8, formatBit(FORMAT_WORD, 7));
+		matrix.setFunction(8, 7, formatBit(FORMAT_WORD, 8));
+		
+		for (int i = 7; i < 15; ++i) {
+			matrix.setFunction(i + SIZE - 15, 8, formatBit(FORMAT_WORD, i));
+		}
+		for (int i = 0; i < 7; ++i) {
+			matrix.setFunction(8, SIZE - 1 - i, formatBit(FORMAT_WORD, i));
 		}
 	}
 
+	/**
+	 * @return the i-th pixel of the format information, most significant bit first
+	 */
+	private static boolean formatBit(int formatWord, int i) {
+		return ((formatWord >>> (14 - i)) & 1) != 0;
+	}
+
 	/*
 	 * =======================================================================
 	 * ****************************** PART 3 *********************************
@@ -341,70 +598,50 @@ public class MatrixConstruction {
 	 * @return The color with the maskingh
 	 */
 	public static int maskColor(int col, int row, boolean dataBit, int masking) {
-		
-		final int MASKED_COLOR = booleanToColor(!dataBit);
-		
-		// A boolean expression that appears twice during the tests for
-		// masks 5 and 6.
-		final int CONDITION_PART_5_6 = ((col * row) % 2) + ((col * row) % 3);
+		return booleanToColor(dataBit ^ isMasked(col, row, masking));
+	}
+
+	/**
+	 * Tell if the data bit at the given coordinate is inverted by a mask
+	 * 
+	 * @param col
+	 *            x-coordinate
+	 * @param row
+	 *            y-coordinate
+	 * @param masking
+	 *            The masking value
+	 * @return true if the mask condition holds, false for an invalid mask
+	 */
+	public static boolean isMasked(int col, int row, int masking) {
 		
 		switch (masking) {
 			case 0:
-				if ((col + row) % 2 == 0) {
-					return MASKED_COLOR;
-				}
-				break;
+				return (col + row) % 2 == 0;
 				
 			case 1:
-				if (row % 2 == 0) {
-					return MASKED_COLOR;
-				}
-				break;
+				return row % 2 == 0;
 			
 			case 2:
-				if (col % 3 == 0) {
-					return MASKED_COLOR;
-				}
-				break;
+				return col % 3 == 0;
 			
 			case 3:
-				if ((col + row) % 3 == 0) {
-					return MASKED_COLOR;
-				}
-				break;
+				return (col + row) % 3 == 0;
 				
 			case 4:
-				final int FLOORED_A = (int) Math.floor(row / 2.0);
-				final int FLOORED_B = (int) Math.floor(col / 3.0);
-				
-				if ((FLOORED_A + FLOORED_B) % 2 == 0) {
-					return MASKED_COLOR;
-				}
-				break;
+				return ((row / 2) + (col / 3)) % 2 == 0;
 				
 			case 5:
-				if (CONDITION_PART_5_6 == 0) {
-					return MASKED_COLOR;
-				}
-				break;
+				return ((col * row) % 2) + ((col * row) % 3) == 0;
 				
 			case 6:
-				if (CONDITION_PART_5_6 % 2 == 0) {
-					return MASKED_COLOR;
-				}
-				break;
+				return (((col * row) % 2) + ((col * row) % 3)) % 2 == 0;
 				
 			case 7:
-				if ((((col + row) % 2) + ((col * row) % 3)) % 2 == 0) {
-					return MASKED_COLOR;
-				}
-				break;
+				return (((col + row) % 2) + ((col * row) % 3)) % 2 == 0;
 				
 			default:
-				break;
+				return false;
 		}
-		
-		return booleanToColor(dataBit);
 	}
     
     /**
@@ -433,14 +670,14 @@ public class MatrixConstruction {
 	 * @param row
 	 * @return The new data index
 	 */
-	public static int fillModuleRow(int[][] matrix, boolean[] data, int mask, int dataIndex, int col, int row) {
+	public static int fillModuleRow(int[][] matrix, BitBuffer data, int mask, int dataIndex, int col, int row) {
 		
 		final int RIGHT = matrix[col][row];
 		final int LEFT = matrix[col - 1][row];
 		
 		if (isWritable(RIGHT)) {
-			if (dataIndex < data.length) {
-				writeBit(matrix, col, row, data[dataIndex], mask);
+			if (dataIndex < data.size()) {
+				writeBit(matrix, col, row, data.getBit(dataIndex), mask);
 				++dataIndex;
 			} else {
 				writeBit(matrix, col, row, false, mask);
@@ -448,8 +685,8 @@ public class MatrixConstruction {
 		}
 		
 		if (isWritable(LEFT)) {
-			if (dataIndex < data.length) {
-				writeBit(matrix, col - 1, row, data[dataIndex], mask);
+			if (dataIndex < data.size()) {
+				writeBit(matrix, col - 1, row, data.getBit(dataIndex), mask);
 				++dataIndex;
 			} else {
 				writeBit(matrix, col - 1, row, false, mask);
@@ -470,7 +707,7 @@ public class MatrixConstruction {
 	 * @param col
 	 * @return
 	 */
-	public static int fillModuleColumn(int[][] matrix, boolean[] data, int mask, int dataIndex, Direction dir, int col) {
+	public static int fillModuleColumn(int[][] matrix, BitBuffer data, int mask, int dataIndex, Direction dir, int col) {
 	 
 		final int LAST_INDEX = matrix.length - 1;
 		
@@ -501,6 +738,20 @@ public class MatrixConstruction {
 	 *            the data to add
 	 */
 	public static void addDataInformation(int[][] matrix, boolean[] data, int mask) {
+		addDataInformation(matrix, new BitBuffer(data), mask);
+	}
+
+	/**
+	 * Add the data bits into the QR code matrix
+	 * 
+	 * @param matrix
+	 *            a 2-dimensionnal array where the bits needs to be added
+	 * @param data
+	 *            the data to add
+	 * @param mask
+	 *            the mask to apply to the data bits
+	 */
+	public static void addDataInformation(int[][] matrix, BitBuffer data, int mask) {
 	 
 		// Up and Down, Right to Left, always right module and then left module
 		// Here, we refer to 'col' as the index of the current 2-module column
@@ -531,6 +782,89 @@ public class MatrixConstruction {
 		}
 	}
 	
+	/**
+	 * Add the data bits into a packed QR code matrix built by
+	 * constructBitMatrix(), and mask them.
+	 * 
+	 * @param matrix
+	 *            the packed matrix where the bits needs to be added
+	 * @param data
+	 *            the data to add
+	 * @param mask
+	 *            the mask to apply to the data bits
+	 */
+	public static void addDataInformation(BitMatrix matrix, BitBuffer data, int mask) {
+		placeData(matrix, data);
+		applyMask(matrix, mask);
+	}
+
+	/**
+	 * Add the data bits into a packed QR code matrix built by
+	 * constructBitMatrix(), without masking them. The bits are scattered along
+	 * the placement path precomputed by the template of the version, the
+	 * modules left after the end of the data receive 0 bits.
+	 * 
+	 * @param matrix
+	 *            the packed matrix where the bits needs to be added
+	 * @param data
+	 *            the data to add
+	 */
+	public static void placeData(BitMatrix matrix, BitBuffer data) {
+		
+		final int[] PATH = FunctionTemplate.get(versionOf(matrix)).dataPath();
+		final long[] MODULES = matrix.modules();
+		final int COUNT = Math.min(PATH.length, data.size());
+		
+		// The template leaves the data modules light, only the 1 bits are written
+		for (int k = 0; k < COUNT; ++k) {
+			final long BIT = (data.getWord(k >>> 6) >>> (63 - (k & 63))) & 1L;
+			MODULES[PATH[k] >>> 6] |= BIT << PATH[k];
+		}
+	}
+	
+	/**
+	 * Add the codewords into a packed QR code matrix built by
+	 * constructBitMatrix(), without masking them, most significant bit first.
+	 * Same as placeData(BitMatrix, BitBuffer) without going through a buffer.
+	 * 
+	 * @param matrix
+	 *            the packed matrix where the bits needs to be added
+	 * @param codewords
+	 *            the interleaved data and error correction codewords
+	 * @param length
+	 *            the number of codewords to add
+	 */
+	public static void placeData(BitMatrix matrix, int[] codewords, int length) {
+		
+		final int[] PATH = FunctionTemplate.get(versionOf(matrix)).dataPath();
+		final long[] MODULES = matrix.modules();
+		final int COUNT = Math.min(PATH.length, length * 8);
+		
+		for (int k = 0; k < COUNT; ++k) {
+			final long BIT = (codewords[k >>> 3] >>> (7 - (k & 7))) & 1L;
+			MODULES[PATH[k] >>> 6] |= BIT << PATH[k];
+		}
+	}
+	
+	/**
+	 * Invert the data modules selected by a mask, with a XOR of the
+	 * precomputed mask plane of the version. Does nothing for an invalid mask.
+	 * 
+	 * @param matrix
+	 *            the packed matrix holding unmasked data
+	 * @param mask
+	 *            the mask id
+	 */
+	public static void applyMask(BitMatrix matrix, int mask) {
+		if (mask >= 0 && mask <= 7) {
+			matrix.xor(FunctionTemplate.get(versionOf(matrix)).maskPlane(mask));
+		}
+	}
+	
+	private static int versionOf(BitMatrix matrix) {
+		return (matrix.getSize() - 17) / 4;
+	}
+	
 	/*
 	 * =======================================================================
 	 * 
@@ -551,9 +885,42 @@ public class MatrixConstruction {
 	 * @return The matrix of the QR code
 	 */
 	public static int[][] renderQRCodeMatrix(int version, boolean[] data) {
+		return renderQRCodeMatrix(version, new BitBuffer(data));
+	}
 
-		final int MASK = findBestMasking(version, data);
-		return renderQRCodeMatrix(version, data, MASK);
+	/**
+	 * Create the matrix of a QR code with the given data.
+	 * 
+	 * The mask is computed automatically so that it provides the least penalty
+	 * 
+	 * @param version
+	 *            The version of the QR code
+	 * @param data
+	 *            The data to be written on the QR code
+	 * @return The matrix of the QR code
+	 */
+	public static int[][] renderQRCodeMatrix(int version, BitBuffer data) {
+		return renderQRCodeMatrix(version, data, CorrectionLvl.L);
+	}
+
+	/**
+	 * Create the matrix of a QR code with the given data, encoded with the
+	 * given error correction level.
+	 * 
+	 * The mask is computed automatically so that it provides the least penalty
+	 * 
+	 * @param version
+	 *            The version of the QR code
+	 * @param data
+	 *            The data to be written on the QR code
+	 * @param lvl
+	 *            The error correction level written in the format information
+	 * @return The matrix of the QR code
+	 */
+	public static int[][] renderQRCodeMatrix(int version, BitBuffer data, CorrectionLvl lvl) {
+
+		final int MASK = findBestMasking(version, data, lvl);
+		return renderQRCodeMatrix(version, data, MASK, lvl);
 	}
 
 	/**
@@ -564,19 +931,156 @@ public class MatrixConstruction {
 	 * @return the mask number that minimize the penalty
 	 */
 	public static int findBestMasking(int version, boolean[] data) {
+		return findBestMasking(version, new BitBuffer(data));
+	}
+
+	/**
+	 * Find the best mask to apply to the  QR code so that the penalty score is
+	 * minimized. Computing the penalty score with evaluate()
+	 * 
+	 * @param data
+	 * @return the mask number that minimize the penalty
+	 */
+	public static int findBestMasking(int version, BitBuffer data) {
+		return findBestMasking(version, data, CorrectionLvl.L);
+	}
+
+	/**
+	 * Find the best mask to apply to the QR code of the given error correction
+	 * level, the format information being part of the scored modules
+	 * 
+	 * @param version
+	 *            The version of the QR code
+	 * @param data
+	 *            The data to be written on the QR code
+	 * @param lvl
+	 *            The error correction level written in the format information
+	 * @return the mask number that minimize the penalty
+	 */
+	public static int findBestMasking(int version, BitBuffer data, CorrectionLvl lvl) {
+
+		// The data is placed only once, each candidate is a copy with a mask plane XORed
+		final EncoderContext CONTEXT = EncoderContext.current();
+		final BitMatrix UNMASKED = CONTEXT.unmasked(version);
+		constructBitMatrix(version, 0, lvl, UNMASKED);
+		placeData(UNMASKED, data);
 
-		int[][] matrixToEvaluate = constructMatrix(version, 0);
-		addDataInformation(matrixToEvaluate, data, 0);
+		return findBestMasking(UNMASKED, lvl, CONTEXT.candidate(version), CONTEXT.maskOrder(), CONTEXT.evaluator());
+	}
+
+	/**
+	 * Find the best mask of a matrix holding the unmasked data, with the given
+	 * scratch storage
+	 * 
+	 * @param unmasked
+	 *            the matrix with its data placed and not masked
+	 * @param lvl
+	 *            The error correction level written in the format information
+	 * @param candidate
+	 *            scratch matrix of the same size, overwritten
+	 * @param order
+	 *            scratch array of 8 entries, overwritten
+	 * @param evaluator
+	 *            the penalty evaluator to use
+	 * @return the mask number that minimize the penalty
+	 */
+	static int findBestMasking(BitMatrix unmasked, CorrectionLvl lvl, BitMatrix candidate, long[] order,
+			PenaltyEvaluator evaluator) {
+
+		// Try the candidates with the best dark module balance first: they are
+		// likely to win, and the others are then abandoned as soon as their
+		// partial score exceeds the best one
+		for (int i = 0; i < 8; ++i) {
+			buildCandidate(unmasked, i, lvl, candidate);
+			order[i] = ((long) PenaltyEvaluator.balancePenalty(candidate) << 3) | i;
+		}
+		Arrays.sort(order, 0, 8);
 
 		int bestMask = 0;
-		int bestMaskScore = evaluate(matrixToEvaluate);
+		int bestMaskScore = Integer.MAX_VALUE;
+
+		for (int i = 0; i < 8; ++i) {
+			final int MASK = (int) (order[i] & 0x7);
+			buildCandidate(unmasked, MASK, lvl, candidate);
+			final int SCORE = evaluator.evaluate(candidate, bestMaskScore);
+
+			// Same result as trying the masks in order: ties go to the lowest id
+			if (SCORE < bestMaskScore || (SCORE == bestMaskScore && MASK < bestMask)) {
+				bestMask = MASK;
+				bestMaskScore = SCORE;
+			}
+		}
+
+		return bestMask;
+	}
+
+	/**
+	 * Copy the unmasked matrix into candidate, then apply the mask and write
+	 * the matching format information
+	 */
+	static void buildCandidate(BitMatrix unmasked, int mask, CorrectionLvl lvl, BitMatrix candidate) {
+		candidate.copyFrom(unmasked);
+		applyMask(candidate, mask);
+		addFormatInformation(candidate, mask, lvl);
+	}
+
+	/**
+	 * Find the best mask like findBestMasking(int, BitBuffer), scoring the 8
+	 * candidates at the same time on the given executor. Each worker thread
+	 * reuses the candidate matrix of its EncoderContext. Ties are broken toward
+	 * the lowest mask id, so the result is always the same as the sequential
+	 * one.
+	 * 
+	 * @param version
+	 *            The version of the QR code
+	 * @param data
+	 *            The data to be written on the QR code
+	 * @param executor
+	 *            where the candidates are scored, e.g. a ForkJoinPool or a
+	 *            virtual thread executor
+	 * @return the mask number that minimize the penalty
+	 */
+	public static int findBestMasking(int version, BitBuffer data, Executor executor) {
+		return findBestMasking(version, data, CorrectionLvl.L, executor);
+	}
+
+	/**
+	 * Find the best mask like findBestMasking(int, BitBuffer, CorrectionLvl),
+	 * scoring the 8 candidates at the same time on the given executor.
+	 * 
+	 * @param version
+	 *            The version of the QR code
+	 * @param data
+	 *            The data to be written on the QR code
+	 * @param lvl
+	 *            The error correction level written in the format information
+	 * @param executor
+	 *            where the candidates are scored
+	 * @return the mask number that minimize the penalty
+	 */
+	public static int findBestMasking(int version, BitBuffer data, CorrectionLvl lvl, Executor executor) {
+
+		// Not taken from the context: a pool thread waiting for the scores may
+		// run another encoding in the meantime
+		final BitMatrix UNMASKED = constructBitMatrix(version, 0, lvl);
+		placeData(UNMASKED, data);
 
-		for (int i = 1; i < 8; ++i) {
-			matrixToEvaluate = constructMatrix(version, i);
-			addDataInformation(matrixToEvaluate, data, i);
-			final int SCORE = evaluate(matrixToEvaluate);
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		CompletableFuture<Integer>[] scores = new CompletableFuture[8];
+		for (int i = 0; i < 8; ++i) {
+			final int MASK = i;
+			scores[i] = CompletableFuture.supplyAsync(() -> {
+				final BitMatrix CANDIDATE = EncoderContext.current().candidate(version);
+				buildCandidate(UNMASKED, MASK, lvl, CANDIDATE);
+				return evaluate(CANDIDATE);
+			}, executor);
+		}
 
-			if(SCORE < bestMaskScore){
+		int bestMask = 0;
+		int bestMaskScore = Integer.MAX_VALUE;
+		for (int i = 0; i < 8; ++i) {
+			final int SCORE = scores[i].join();
+			if (SCORE < bestMaskScore) {
 				bestMask = i;
 				bestMaskScore = SCORE;
 			}
@@ -585,6 +1089,42 @@ public class MatrixConstruction {
 		return bestMask;
 	}
 
+	/**
+	 * Create the matrix of a QR code with the given data, the best mask being
+	 * searched in parallel on the given executor
+	 * 
+	 * @param version
+	 *            The version of the QR code
+	 * @param data
+	 *            The data to be written on the QR code
+	 * @param executor
+	 *            where the mask candidates are scored
+	 * @return The matrix of the QR code
+	 */
+	public static int[][] renderQRCodeMatrix(int version, BitBuffer data, Executor executor) {
+		return renderQRCodeMatrix(version, data, CorrectionLvl.L, executor);
+	}
+
+	/**
+	 * Create the matrix of a QR code with the given data and error correction
+	 * level, the best mask being searched in parallel on the given executor
+	 * 
+	 * @param version
+	 *            The version of the QR code
+	 * @param data
+	 *            The data to be written on the QR code
+	 * @param lvl
+	 *            The error correction level written in the format information
+	 * @param executor
+	 *            where the mask candidates are scored
+	 * @return The matrix of the QR code
+	 */
+	public static int[][] renderQRCodeMatrix(int version, BitBuffer data, CorrectionLvl lvl, Executor executor) {
+
+		final int MASK = findBestMasking(version, data, lvl, executor);
+		return renderQRCodeMatrix(version, data, MASK, lvl);
+	}
+
 	/**
 	 * Compute the penalty score of a matrix
 	 * 
@@ -611,7 +1151,37 @@ public class MatrixConstruction {
 			}
 		}
 		
-		final double BLACK_PERCENTAGE = ((double) blackModulesCount / (double) TOTAL_MODULES) * 100.0;
+		penalty += balancePenalty(blackModulesCount, TOTAL_MODULES);
+
+		return penalty;
+	}
+
+	/**
+	 * Compute the penalty score of a packed matrix with the PenaltyEvaluator of
+	 * the current thread. The score is the same as the one of evaluate() on the
+	 * ARGB version of the matrix.
+	 * 
+	 * @param matrix:
+	 *            the QR code in packed form
+	 * @return the penalty score obtained by the QR code, lower the better
+	 */
+	public static int evaluate(BitMatrix matrix) {
+		return EncoderContext.current().evaluator().evaluate(matrix);
+	}
+
+	/**
+	 * Compute the penalty given by the proportion of dark modules
+	 * 
+	 * @param blackModulesCount
+	 *            the number of dark modules
+	 * @param totalModules
+	 *            the number of modules of the matrix
+	 * @return the penalty, 2 points for each percent away from the closest
+	 *         multiple of 5 around 50%
+	 */
+	public static int balancePenalty(int blackModulesCount, int totalModules) {
+		
+		final double BLACK_PERCENTAGE = ((double) blackModulesCount / (double) totalModules) * 100.0;
 		final int FLOORED_PERC = (int) Math.floor(BLACK_PERCENTAGE);
 		
 		final int PREV_PERC = FLOORED_PERC - (FLOORED_PERC % 5);
@@ -619,9 +1189,7 @@ public class MatrixConstruction {
 		final int ABS_PREV = Math.abs(PREV_PERC - 50);
 		final int ABS_NEXT = Math.abs(NEXT_PERC - 50);
 		
-		penalty += Math.min(ABS_PREV, ABS_NEXT) * 2;
-
-		return penalty;
+		return Math.min(ABS_PREV, ABS_NEXT) * 2;
 	}
 
 
@@ -0,0 +1,76 @@
+package qrcode;
+
+/**
+ * Encoding modes of the data segments, with their 4 bits mode indicator and
+ * the length of their character count indicator in each range of versions
+ * (1 to 9, 10 to 26, 27 to 40).
+ */
+public enum Mode {
+
+	NUMERIC(0b0001, 10, 12, 14),
+	ALPHANUMERIC(0b0010, 9, 11, 13),
+	BYTE(0b0100, 8, 16, 16),
+	KANJI(0b1000, 8, 10, 12);
+
+	private final int indicator;
+	private final int[] countBits;
+
+	private Mode(int indicator, int... countBits) {
+		this.indicator = indicator;
+		this.countBits = countBits;
+	}
+
+	/**
+	 * @return the 4 bits mode indicator starting a segment
+	 */
+	public int getIndicator() {
+		return indicator;
+	}
+
+	/**
+	 * @param version
+	 *            the version of the QR code, between 1 and 40
+	 * @return the length of the character count indicator in this version
+	 */
+	public int getCountBits(int version) {
+		return countBits[QRCodeInfos.getCountRange(version)];
+	}
+
+	/**
+	 * Compute the number of bits of the characters of a segment, header excluded
+	 *
+	 * @param charCount
+	 *            the number of characters (bytes in byte mode)
+	 * @return 10 bits per group of 3 digits in numeric mode, 11 bits per pair
+	 *         of characters in alphanumeric mode, 8 bits per byte, 13 bits per
+	 *         kanji
+	 */
+	public int getDataBits(int charCount) {
+		switch (this) {
+			case NUMERIC:
+				// A trailing group of 1 or 2 digits takes 4 or 7 bits
+				return 10 * (charCount / 3) + (charCount % 3 == 0 ? 0 : 1 + 3 * (charCount % 3));
+			case ALPHANUMERIC:
+				return 11 * (charCount / 2) + 6 * (charCount % 2);
+			case KANJI:
+				return 13 * charCount;
+			default:
+				return 8 * charCount;
+		}
+	}
+
+	/**
+	 * Compute the exact number of bits of a segment: mode indicator, character
+	 * count indicator and characters
+	 *
+	 * @param charCount
+	 *            the number of characters (bytes in byte mode)
+	 * @param version
+	 *            the version of the QR code, between 1 and 40
+	 * @return the number of bits of the segment
+	 */
+	public int getBitCost(int charCount, int version) {
+		return 4 + getCountBits(version) + getDataBits(charCount);
+	}
+
+}
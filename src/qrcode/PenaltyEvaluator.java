@@ -0,0 +1,225 @@
+package qrcode;
+
+/**
+ * Penalty score of a packed matrix, computed 64 modules at a time on its rows
+ * and on the rows of its transpose (i.e. its columns).
+ *
+ * For a line L, let S_k be L shifted so that its bit x is the module x + k.
+ * <ul>
+ * <li>Rule 1: a run of n >= 5 modules of the same color costs n - 2, that is
+ * one point per window of 5 equal modules, plus 2 points at the start of the
+ * run. Both are found with the XNOR of consecutive S_k.</li>
+ * <li>Rule 2: 2x2 squares, from the XNOR of two consecutive rows and of each
+ * row with S_1.</li>
+ * <li>Rule 3: the 11-module finder-like patterns 0000 1011101 and 1011101
+ * 0000, matched as an AND of S_0 to S_10 (or their complement).</li>
+ * <li>Rule 4: the balance of dark modules, counted with Long.bitCount().</li>
+ * </ul>
+ * The score is the same as the one of MatrixConstruction.evaluate(int[][]).
+ * The evaluation can be given a ceiling above which it stops early, which
+ * lets the mask search skip most of the work for the losing candidates.
+ * An evaluator keeps the transposed matrix between calls and allocates nothing
+ * once it has seen the largest size. It must not be shared between threads.
+ */
+public final class PenaltyEvaluator {
+
+	private long[] transposed = new long[0];
+	private final long[] block = new long[64];
+
+	/**
+	 * Compute the penalty score of a packed matrix
+	 * 
+	 * @param matrix
+	 *            the QR code in packed form
+	 * @return the penalty score obtained by the QR code, lower the better
+	 */
+	public int evaluate(BitMatrix matrix) {
+		return evaluate(matrix, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Compute the penalty score of a packed matrix, giving up as soon as it
+	 * exceeds a ceiling. Rule 4 is computed first since it is the cheapest,
+	 * then the rows and finally the columns, the running score being checked
+	 * after each line.
+	 * 
+	 * @param matrix
+	 *            the QR code in packed form
+	 * @param ceiling
+	 *            the highest score of interest
+	 * @return the penalty score if it is at most ceiling, otherwise any value
+	 *         greater than ceiling
+	 */
+	public int evaluate(BitMatrix matrix, int ceiling) {
+
+		final int SIZE = matrix.getSize();
+		final int STRIDE = matrix.getStride();
+		final long[] ROWS = matrix.modules();
+
+		int penalty = balancePenalty(matrix);
+		if (penalty > ceiling) {
+			return penalty;
+		}
+
+		for (int y = 0; y < SIZE; ++y) {
+			final int ROW = y * STRIDE;
+			penalty += linePenalties(ROWS, ROW, STRIDE, SIZE);
+			if (y < SIZE - 1) {
+				penalty += squarePenalties(ROWS, ROW, STRIDE, SIZE);
+			}
+			if (penalty > ceiling) {
+				return penalty;
+			}
+		}
+
+		transpose(ROWS, SIZE, STRIDE);
+		for (int x = 0; x < SIZE; ++x) {
+			penalty += linePenalties(transposed, x * STRIDE, STRIDE, SIZE);
+			if (penalty > ceiling) {
+				return penalty;
+			}
+		}
+
+		return penalty;
+	}
+
+	/**
+	 * Rule 4 alone, a cheap lower bound of the score
+	 * 
+	 * @param matrix
+	 *            the QR code in packed form
+	 * @return the penalty given by the proportion of dark modules
+	 */
+	public static int balancePenalty(BitMatrix matrix) {
+		return MatrixConstruction.balancePenalty(matrix.countDark(), matrix.getSize() * matrix.getSize());
+	}
+
+	/**
+	 * Rules 1 and 3 on a single line
+	 */
+	private static int linePenalties(long[] lines, int offset, int stride, int size) {
+
+		int runs = 0;
+		int runStarts = 0;
+		int patterns = 0;
+
+		long previous = 0L;
+		for (int w = 0; w < stride; ++w) {
+			final long S0 = lines[offset + w];
+			final long NEXT = (w + 1 < stride) ? lines[offset + w + 1] : 0L;
+			final long S1 = shift(S0, NEXT, 1);
+			final long S2 = shift(S0, NEXT, 2);
+			final long S3 = shift(S0, NEXT, 3);
+			final long S4 = shift(S0, NEXT, 4);
+
+			// Rule 1: 5 equal modules starting at x, and whether x starts the run
+			final long FIVE = ~(S0 ^ S1) & ~(S1 ^ S2) & ~(S2 ^ S3) & ~(S3 ^ S4) & validStarts(w, size - 5);
+			final long BEFORE = (S0 << 1) | (previous >>> 63);
+			final long CHANGED = (S0 ^ BEFORE) | (w == 0 ? 1L : 0L);
+			runs += Long.bitCount(FIVE);
+			runStarts += Long.bitCount(FIVE & CHANGED);
+
+			// Rule 3: both finder-like patterns share the 1011101 core
+			final long VALID = validStarts(w, size - 11);
+			if (VALID != 0) {
+				final long S5 = shift(S0, NEXT, 5);
+				final long S6 = shift(S0, NEXT, 6);
+				final long S7 = shift(S0, NEXT, 7);
+				final long S8 = shift(S0, NEXT, 8);
+				final long S9 = shift(S0, NEXT, 9);
+				final long S10 = shift(S0, NEXT, 10);
+
+				final long LIGHT_START = ~(S0 | S1 | S2 | S3);
+				final long LIGHT_END = ~(S7 | S8 | S9 | S10);
+				final long CORE_AT_0 = S0 & ~S1 & S2 & S3 & S4 & ~S5 & S6;
+				final long CORE_AT_4 = S4 & ~S5 & S6 & S7 & S8 & ~S9 & S10;
+
+				patterns += Long.bitCount(LIGHT_START & CORE_AT_4 & VALID);
+				patterns += Long.bitCount(CORE_AT_0 & LIGHT_END & VALID);
+			}
+
+			previous = S0;
+		}
+
+		return runs + 2 * runStarts + 40 * patterns;
+	}
+
+	/**
+	 * Rule 2 on a row and the next one
+	 */
+	private static int squarePenalties(long[] rows, int offset, int stride, int size) {
+
+		int squares = 0;
+		for (int w = 0; w < stride; ++w) {
+			final int NEXT_WORD = offset + w + 1;
+			final long A = rows[offset + w];
+			final long B = rows[offset + stride + w];
+			final long A_NEXT = shift(A, (w + 1 < stride) ? rows[NEXT_WORD] : 0L, 1);
+			final long B_NEXT = shift(B, (w + 1 < stride) ? rows[NEXT_WORD + stride] : 0L, 1);
+
+			squares += Long.bitCount(~(A ^ B) & ~(A_NEXT ^ B_NEXT) & ~(A ^ A_NEXT) & validStarts(w, size - 2));
+		}
+		return 3 * squares;
+	}
+
+	/**
+	 * @return the bits x + k of a line at position x, next being the word
+	 *         following word
+	 */
+	private static long shift(long word, long next, int k) {
+		return (word >>> k) | (next << (64 - k));
+	}
+
+	/**
+	 * @return the bits of word w whose module index is at most last
+	 */
+	private static long validStarts(int w, int last) {
+		final int LAST = last - 64 * w;
+		if (LAST < 0) {
+			return 0L;
+		}
+		return LAST >= 63 ? -1L : (-1L >>> (63 - LAST));
+	}
+
+	/**
+	 * Transpose the matrix into the transposed buffer, 64x64 modules at a time
+	 */
+	private void transpose(long[] rows, int size, int stride) {
+
+		if (transposed.length < size * stride) {
+			transposed = new long[size * stride];
+		}
+
+		for (int by = 0; by < stride; ++by) {
+			for (int bx = 0; bx < stride; ++bx) {
+				for (int i = 0; i < 64; ++i) {
+					final int Y = 64 * by + i;
+					block[i] = Y < size ? rows[Y * stride + bx] : 0L;
+				}
+				transpose64(block);
+				for (int i = 0; i < 64; ++i) {
+					final int X = 64 * bx + i;
+					if (X < size) {
+						transposed[X * stride + by] = block[i];
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Transpose a 64x64 bit block in place (bit j of a[i] becomes bit i of
+	 * a[j]) by swapping blocks of 32, 16, ... 1 bits
+	 */
+	private static void transpose64(long[] a) {
+		long mask = 0x0000_0000_FFFF_FFFFL;
+		for (int j = 32; j != 0; j >>>= 1, mask ^= mask << j) {
+			for (int k = 0; k < 64; k = ((k | j) + 1) & ~j) {
+				final long T = ((a[k] >>> j) ^ a[k | j]) & mask;
+				a[k | j] ^= T;
+				a[k] ^= T << j;
+			}
+		}
+	}
+
+}
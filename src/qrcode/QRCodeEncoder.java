@@ -0,0 +1,146 @@
+package qrcode;
+
+import java.util.function.IntUnaryOperator;
+
+import qrcode.QRCodeInfos.CorrectionLvl;
+
+/**
+ * Reusable pipeline turning a text into a finished QR code: segmentation,
+ * padding, error correction and interleaving, data placement and mask choice.
+ *
+ * The stages write into the scratch storage of an EncoderContext: the
+ * codewords go from the segment buffer to the interleaved sequence and then
+ * straight into the matrix, the data being placed only once for the 8 mask
+ * candidates. Once the context has seen the versions it is used with,
+ * encoding a text into a matrix of the right size allocates nothing.
+ *
+ * An encoder is not thread safe, each thread needs its own, and two encoders
+ * sharing a context must not run at the same time.
+ */
+public final class QRCodeEncoder {
+
+	private final CorrectionLvl lvl;
+	private final EncoderContext context;
+
+	/*
+	 * The text being encoded, read by bitCost
+	 */
+	private CharSequence input;
+	private final IntUnaryOperator bitCost;
+
+	/**
+	 * Create an encoder for the given error correction level, with its own
+	 * context
+	 *
+	 * @param lvl
+	 *            the error correction level of the QR codes
+	 */
+	public QRCodeEncoder(CorrectionLvl lvl) {
+		this(lvl, new EncoderContext());
+	}
+
+	/**
+	 * Create an encoder for the given error correction level
+	 *
+	 * @param lvl
+	 *            the error correction level of the QR codes
+	 * @param context
+	 *            the scratch storage of the encoder, e.g.
+	 *            EncoderContext.current() or EncoderContext.acquire()
+	 */
+	public QRCodeEncoder(CorrectionLvl lvl, EncoderContext context) {
+		this.lvl = lvl;
+		this.context = context;
+		final Segmenter SEGMENTER = context.segmenter();
+		this.bitCost = version -> SEGMENTER.getBitCost(input, version);
+	}
+
+	/**
+	 * @return the error correction level of the QR codes
+	 */
+	public CorrectionLvl getCorrectionLvl() {
+		return lvl;
+	}
+
+	/**
+	 * Encode a text into the smallest version holding it
+	 *
+	 * @param input
+	 *            the text to encode
+	 * @return a new matrix holding the QR code
+	 * @throws DataTooLongException
+	 *             if the text does not fit in version 40
+	 */
+	public BitMatrix encode(CharSequence input) {
+		return encode(input, null);
+	}
+
+	/**
+	 * Encode a text into the smallest version holding it, reusing the given
+	 * matrix when it has the size of that version
+	 *
+	 * @param input
+	 *            the text to encode
+	 * @param matrix
+	 *            the matrix to overwrite, may be null
+	 * @return matrix if it had the right size, otherwise a new matrix holding
+	 *         the QR code
+	 * @throws DataTooLongException
+	 *             if the text does not fit in version 40
+	 */
+	public BitMatrix encode(CharSequence input, BitMatrix matrix) {
+
+		this.input = input;
+		final int VERSION;
+		try {
+			VERSION = QRCodeInfos.getMinimumVersion(bitCost, lvl);
+		} finally {
+			this.input = null;
+		}
+
+		final int SIZE = QRCodeInfos.getMatrixSize(VERSION);
+		final BitMatrix OUTPUT = (matrix != null && matrix.getSize() == SIZE) ? matrix : new BitMatrix(SIZE);
+		encode(input, VERSION, OUTPUT);
+		return OUTPUT;
+	}
+
+	/**
+	 * Encode a text into the given version
+	 *
+	 * @param input
+	 *            the text to encode
+	 * @param version
+	 *            the version of the QR code, between 1 and 40
+	 * @param matrix
+	 *            the matrix to overwrite, of the size of the version
+	 * @throws DataTooLongException
+	 *             if the text does not fit in the version
+	 */
+	public void encode(CharSequence input, int version, BitMatrix matrix) {
+
+		if (matrix.getSize() != QRCodeInfos.getMatrixSize(version)) {
+			throw new IllegalArgumentException("Version " + version + " needs a matrix of size "
+					+ QRCodeInfos.getMatrixSize(version) + ", got " + matrix.getSize());
+		}
+
+		// Segments, then padded data codewords
+		final BitBuffer SEGMENTS = context.segments();
+		context.segmenter().appendSegments(input, version, SEGMENTS);
+		final int[] DATA_CODEWORDS = context.dataCodewords();
+		DataEncoding.toDataCodewords(SEGMENTS, version, lvl, DATA_CODEWORDS);
+
+		// Error correction, interleaved with the data
+		final int[] CODEWORDS = context.codewords();
+		BlockInterleaver.interleave(DATA_CODEWORDS, version, lvl, CODEWORDS, context);
+
+		// The data is placed once, then each mask is tried on a copy
+		final BitMatrix UNMASKED = context.unmasked(version);
+		MatrixConstruction.constructBitMatrix(version, 0, lvl, UNMASKED);
+		MatrixConstruction.placeData(UNMASKED, CODEWORDS, QRCodeInfos.getTotalCodewords(version));
+
+		final int MASK = MatrixConstruction.findBestMasking(UNMASKED, lvl, context.candidate(version),
+				context.maskOrder(), context.evaluator());
+		MatrixConstruction.buildCandidate(UNMASKED, MASK, lvl, matrix);
+	}
+
+}
@@ -3,6 +3,8 @@ package qrcode;
 import javax.swing.*;
 import java.awt.*;
 
+import qrcode.QRCodeInfos.CorrectionLvl;
+
 public class QRCodeFrame extends JFrame {
     
     private final String TITLE = "QR Code Generator";
@@ -15,8 +17,8 @@ public class QRCodeFrame extends JFrame {
     private JTextArea contentTextArea = new JTextArea();
     private JButton generateButton = new JButton("Generate");
     
-    private final int[] VERSIONS = {1, 2, 3, 4};
     private JComboBox<Integer> versionCombo = new JComboBox<>();
+    private JComboBox<CorrectionLvl> levelCombo = new JComboBox<>(CorrectionLvl.values());
     private final String[] MASKS = {"Auto", "0", "1", "2", "3", "4", "5", "6", "7"};
     private JComboBox<String> maskCombo = new JComboBox<>();
     private JTextField scaleTextField = new JTextField();
@@ -42,12 +44,15 @@ public class QRCodeFrame extends JFrame {
         contentTextArea.setMargin(new Insets(10,10,10,10));
         
         JPanel northContainer = new JPanel();
-        for (int v : VERSIONS) {
+        for (int v = 1; v <= QRCodeInfos.MAX_VERSION; ++v) {
             versionCombo.addItem(v);
         }
         northContainer.add(new JLabel("Version :"));
         northContainer.add(versionCombo);
         
+        northContainer.add(new JLabel("Level :"));
+        northContainer.add(levelCombo);
+        
         for (String m : MASKS) {
             maskCombo.addItem(m);
         }
@@ -75,16 +80,27 @@ public class QRCodeFrame extends JFrame {
     private void showMatrix() {
         int version = versionCombo.getSelectedIndex() + 1;
         int scale = Integer.parseInt(scaleTextField.getText().trim());
-        boolean[] encodedData = DataEncoding.byteModeEncoding(contentTextArea.getText(), version);
+        CorrectionLvl lvl = (CorrectionLvl) levelCombo.getSelectedItem();
+        BitBuffer encodedData = new BitBuffer();
+        try {
+            DataEncoding.encode(contentTextArea.getText(), version, lvl, encodedData);
+        } catch (DataTooLongException e) {
+            // Nothing is cut off the text, the user picks a larger version or a lower level
+            JOptionPane.showMessageDialog(this,
+                    "The text needs " + e.getBitCount() + " bits, version " + version + "-" + lvl
+                            + " holds " + e.getCapacity() + ".",
+                    TITLE, JOptionPane.ERROR_MESSAGE);
+            return;
+        }
         
         int maskIndex = maskCombo.getSelectedIndex();
         int[][] qrCode;
         
         if (maskIndex == 0) {
             // Automatic mask selection
-            qrCode = MatrixConstruction.renderQRCodeMatrix(version, encodedData);
+            qrCode = MatrixConstruction.renderQRCodeMatrix(version, encodedData, lvl);
         } else {
-            qrCode = MatrixConstruction.renderQRCodeMatrix(version, encodedData, maskIndex - 1);
+            qrCode = MatrixConstruction.renderQRCodeMatrix(version, encodedData, maskIndex - 1, lvl);
         }
     
         Helpers.show(qrCode, scale);
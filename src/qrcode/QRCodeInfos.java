@@ -1,19 +1,137 @@
 package qrcode;
 
+import java.util.function.IntUnaryOperator;
+
 public final class QRCodeInfos {
 	
 	private static final int MATRIX_SIZE_VERSION_1 =21;
 	private static final int MATRIX_SIZE_STEP =4;
 	
-	private final static int[] VERSION_CODE_WORDS = { 19, 34, 55, 80 };
-	
 	private static final int[] LVL_CODE = {1,0,3,2};
 	
 	public enum CorrectionLvl{
 		L,M,Q,H
 	}
 	
-	private static final int[] ERROR_CORRECTION_CODEWORDS = {7,10,15,20};
+	public static final int MAX_VERSION = 40;
+	
+	/*
+	 * First versions of the three ranges sharing the same character count indicator lengths
+	 */
+	private static final int[] COUNT_RANGE_STARTS = { 1, 10, 27, MAX_VERSION + 1 };
+	
+	/*
+	 * First version carrying the two version information blocks
+	 */
+	private static final int VERSION_INFORMATION_VERSION = 7;
+	
+	/*
+	 * Total number of codewords (data and error correction) of each version
+	 */
+	private static final int[] TOTAL_CODEWORDS = {
+		26, 44, 70, 100, 134, 172, 196, 242, 292, 346, 404, 466, 532, 581, 655, 733, 815, 901, 991, 1085,
+		1156, 1258, 1364, 1474, 1588, 1706, 1828, 1921, 2051, 2185, 2323, 2465, 2611, 2761, 2876, 3034, 3196, 3362, 3532, 3706
+	};
+	
+	/*
+	 * Number of error correction codewords of each block, indexed by [correction level][version - 1]
+	 */
+	private static final int[][] ECC_PER_BLOCK = {
+		// L
+		{ 7, 10, 15, 20, 26, 18, 20, 24, 30, 18, 20, 24, 26, 30, 22, 24, 28, 30, 28, 28,
+		  28, 28, 30, 30, 26, 28, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30 },
+		// M
+		{ 10, 16, 26, 18, 24, 16, 18, 22, 22, 26, 30, 22, 22, 24, 24, 28, 28, 26, 26, 26,
+		  26, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28 },
+		// Q
+		{ 13, 22, 18, 26, 18, 24, 18, 22, 20, 24, 28, 26, 24, 20, 30, 24, 28, 28, 26, 30,
+		  28, 30, 30, 30, 30, 28, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30 },
+		// H
+		{ 17, 28, 22, 16, 22, 28, 26, 26, 24, 28, 24, 28, 22, 24, 24, 30, 28, 28, 26, 28,
+		  30, 24, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30 }
+	};
+	
+	/*
+	 * Number of error correction blocks, indexed by [correction level][version - 1]
+	 */
+	private static final int[][] BLOCK_COUNT = {
+		// L
+		{ 1, 1, 1, 1, 1, 2, 2, 2, 2, 4, 4, 4, 4, 4, 6, 6, 6, 6, 7, 8,
+		  8, 9, 9, 10, 12, 12, 12, 13, 14, 15, 16, 17, 18, 19, 19, 20, 21, 22, 24, 25 },
+		// M
+		{ 1, 1, 1, 2, 2, 4, 4, 4, 5, 5, 5, 8, 9, 9, 10, 10, 11, 13, 14, 16,
+		  17, 17, 18, 20, 21, 23, 25, 26, 28, 29, 31, 33, 35, 37, 38, 40, 43, 45, 47, 49 },
+		// Q
+		{ 1, 1, 2, 2, 4, 4, 6, 6, 8, 8, 8, 10, 12, 16, 12, 17, 16, 18, 21, 20,
+		  23, 23, 25, 27, 29, 34, 34, 35, 38, 40, 43, 45, 48, 51, 53, 56, 59, 62, 65, 68 },
+		// H
+		{ 1, 1, 2, 4, 4, 4, 5, 6, 8, 8, 11, 11, 16, 16, 18, 16, 19, 21, 25, 25,
+		  25, 34, 30, 32, 35, 37, 40, 42, 45, 48, 51, 54, 57, 60, 63, 66, 70, 74, 77, 81 }
+	};
+	
+	/*
+	 * Row and column coordinates of the alignment pattern centers of each version
+	 */
+	private static final int[][] ALIGNMENT_CENTERS = {
+		{ },
+		{ 6, 18 },
+		{ 6, 22 },
+		{ 6, 26 },
+		{ 6, 30 },
+		{ 6, 34 },
+		{ 6, 22, 38 },
+		{ 6, 24, 42 },
+		{ 6, 26, 46 },
+		{ 6, 28, 50 },
+		{ 6, 30, 54 },
+		{ 6, 32, 58 },
+		{ 6, 34, 62 },
+		{ 6, 26, 46, 66 },
+		{ 6, 26, 48, 70 },
+		{ 6, 26, 50, 74 },
+		{ 6, 30, 54, 78 },
+		{ 6, 30, 56, 82 },
+		{ 6, 30, 58, 86 },
+		{ 6, 34, 62, 90 },
+		{ 6, 28, 50, 72, 94 },
+		{ 6, 26, 50, 74, 98 },
+		{ 6, 30, 54, 78, 102 },
+		{ 6, 28, 54, 80, 106 },
+		{ 6, 32, 58, 84, 110 },
+		{ 6, 30, 58, 86, 114 },
+		{ 6, 34, 62, 90, 118 },
+		{ 6, 26, 50, 74, 98, 122 },
+		{ 6, 30, 54, 78, 102, 126 },
+		{ 6, 26, 52, 78, 104, 130 },
+		{ 6, 30, 56, 82, 108, 134 },
+		{ 6, 34, 60, 86, 112, 138 },
+		{ 6, 30, 58, 86, 114, 142 },
+		{ 6, 34, 62, 90, 118, 146 },
+		{ 6, 30, 54, 78, 102, 126, 150 },
+		{ 6, 24, 50, 76, 102, 128, 154 },
+		{ 6, 28, 54, 80, 106, 132, 158 },
+		{ 6, 32, 58, 84, 110, 136, 162 },
+		{ 6, 26, 54, 82, 110, 138, 166 },
+		{ 6, 30, 58, 86, 114, 142, 170 }
+	};
+	
+	/*
+	 * Number of modules left over once every codeword is placed, indexed by version - 1
+	 */
+	private static final int[] REMAINDER_BITS = {
+		0, 7, 7, 7, 7, 7, 0, 0, 0, 0, 0, 0, 0, 3, 3, 3, 3, 3, 3, 3,
+		4, 4, 4, 4, 4, 4, 4, 3, 3, 3, 3, 3, 3, 3, 0, 0, 0, 0, 0, 0
+	};
+	
+	/*
+	 * Format information of each error correction level and mask, indexed by (level << 3) | mask
+	 */
+	private static final int[] FORMAT_WORDS = formatWordsGenerator();
+	
+	/*
+	 * Version information of versions 7 to 40, indexed by version - 7
+	 */
+	private static final int[] VERSION_WORDS = versionWordsGenerator();
 	
 	
 	
@@ -33,93 +151,325 @@ public final class QRCodeInfos {
 	
 	
 	/**
-	 * Get the maximum input length for a given QR code version
+	 * Get the maximum input length for a given QR code version, at error correction level L
 	 * @param version
 	 *        version of the QRcode
 	 * @return the maximum number of bytes of data that can be encoded for the given version
 	 */
 	public static int getMaxInputLength(int version) {
-		if(version>4) {
-			throw new UnsupportedOperationException("The version has to be between 1 and 5");
-		}
-		return VERSION_CODE_WORDS[version-1] -2 ;
+		return getMaxInputLength(version, CorrectionLvl.L);
+	}
+	
+	/**
+	 * Get the maximum input length in byte mode for a given version and error correction level
+	 * @param version
+	 *        version of the QRcode, between 1 and 40
+	 * @param lvl
+	 *        the error correction level
+	 * @return the maximum number of bytes of data that can be encoded, once the mode
+	 *         and character count indicators are accounted for
+	 */
+	public static int getMaxInputLength(int version, CorrectionLvl lvl) {
+		// 4 bits of mode and 4 bits of terminator around the count indicator
+		return getDataCodewords(version, lvl) - 1 - getByteCountBits(version) / 8;
 	}
 	
-	/** Get the number of error correction codewords needed for a given version
+	/** Get the number of error correction codewords needed for a given version, at error correction level L
 	 * @param version
 	 * 			 version of the QRcode	
 	 * @return
 	 */
 	public static int getECCLength(int version) {
-		if(version>4) {
-			throw new UnsupportedOperationException("The version has to be between 1 and 5");
-		}
-		return ERROR_CORRECTION_CODEWORDS[version-1] ;
+		return getECCLength(version, CorrectionLvl.L);
+	}
+	
+	/** Get the total number of error correction codewords, all blocks included
+	 * @param version
+	 * 			 version of the QRcode, between 1 and 40
+	 * @param lvl
+	 *           the error correction level
+	 * @return the number of error correction codewords of the symbol
+	 */
+	public static int getECCLength(int version, CorrectionLvl lvl) {
+		checkVersion(version);
+		return BLOCK_COUNT[lvl.ordinal()][version-1] * ECC_PER_BLOCK[lvl.ordinal()][version-1];
 	}
 	
 	/**
-	 * Get the number of codewords encoding the data for a given version
+	 * Get the number of codewords encoding the data for a given version, at error correction level L
 	 * @param version
 	 *          version of the QRcode
 	 * @return the number of codewords in the version
 	 */
 	public static int getCodeWordsLength(int version) {
-		if(version>4) {
-			throw new UnsupportedOperationException("The version has to be between 1 and 5");
+		return getDataCodewords(version, CorrectionLvl.L);
+	}
+
+
+
+	/**
+	 * Get the total number of codewords (data and error correction) of a version
+	 * @param version
+	 *          version of the QRcode, between 1 and 40
+	 * @return the number of codewords held by the symbol
+	 */
+	public static int getTotalCodewords(int version) {
+		checkVersion(version);
+		return TOTAL_CODEWORDS[version-1];
+	}
+	
+	/**
+	 * Get the number of data codewords for a given version and error correction level
+	 * @param version
+	 *          version of the QRcode, between 1 and 40
+	 * @param lvl
+	 *          the error correction level
+	 * @return the number of codewords available for the data
+	 */
+	public static int getDataCodewords(int version, CorrectionLvl lvl) {
+		checkVersion(version);
+		return TOTAL_CODEWORDS[version-1] - BLOCK_COUNT[lvl.ordinal()][version-1] * ECC_PER_BLOCK[lvl.ordinal()][version-1];
+	}
+	
+	/**
+	 * Get the number of data bits for a given version and error correction level
+	 * @param version
+	 *          version of the QRcode, between 1 and 40
+	 * @param lvl
+	 *          the error correction level
+	 * @return the number of bits available for the segments of the data
+	 */
+	public static int getDataBits(int version, CorrectionLvl lvl) {
+		return getDataCodewords(version, lvl) * 8;
+	}
+	
+	/**
+	 * Find the smallest version holding the data at the given error correction level.
+	 * The cost of the data only depends on the lengths of the character count indicators,
+	 * so it is computed once for each of the three ranges of versions sharing them,
+	 * and the capacity table of the range is binary searched
+	 * @param bitCost
+	 *          gives the exact number of bits of the data when encoded in a version
+	 * @param lvl
+	 *          the error correction level
+	 * @return the smallest version between 1 and 40 in which the data fits
+	 * @throws DataTooLongException
+	 *          if the data does not fit in version 40
+	 */
+	public static int getMinimumVersion(IntUnaryOperator bitCost, CorrectionLvl lvl) {
+		int bits = 0;
+		for(int range=0;range<COUNT_RANGE_STARTS.length-1;range++) {
+			final int FIRST = COUNT_RANGE_STARTS[range];
+			final int LAST = COUNT_RANGE_STARTS[range+1] - 1;
+			
+			bits = bitCost.applyAsInt(FIRST);
+			if(bits <= getDataBits(LAST, lvl)) {
+				// The capacity grows with the version
+				int low = FIRST;
+				int high = LAST;
+				while(low < high) {
+					final int MIDDLE = (low + high) >>> 1;
+					if(bits <= getDataBits(MIDDLE, lvl)) {
+						high = MIDDLE;
+					} else {
+						low = MIDDLE + 1;
+					}
+				}
+				return low;
+			}
+		}
+		throw new DataTooLongException(bits, getDataBits(MAX_VERSION, lvl));
+	}
+	
+	/**
+	 * Get the number of error correction codewords of each block
+	 * @param version
+	 *          version of the QRcode, between 1 and 40
+	 * @param lvl
+	 *          the error correction level
+	 * @return the number of ECC per block
+	 */
+	public static int getECCPerBlock(int version, CorrectionLvl lvl) {
+		checkVersion(version);
+		return ECC_PER_BLOCK[lvl.ordinal()][version-1];
+	}
+	
+	/**
+	 * Get the number of error correction blocks the data is split into
+	 * @param version
+	 *          version of the QRcode, between 1 and 40
+	 * @param lvl
+	 *          the error correction level
+	 * @return the number of blocks (group 1 and group 2)
+	 */
+	public static int getBlockCount(int version, CorrectionLvl lvl) {
+		checkVersion(version);
+		return BLOCK_COUNT[lvl.ordinal()][version-1];
+	}
+	
+	/**
+	 * Get the coordinates of the alignment pattern centers. Every pair of coordinates
+	 * is a center, except the three overlapping the finder patterns
+	 * @param version
+	 *          version of the QRcode, between 1 and 40
+	 * @return the row (and column) coordinates, in increasing order. Must not be modified
+	 */
+	static int[] getAlignmentCenters(int version) {
+		checkVersion(version);
+		return ALIGNMENT_CENTERS[version-1];
+	}
+	
+	/**
+	 * Get the number of data modules left empty once all the codewords are placed
+	 * @param version
+	 *          version of the QRcode, between 1 and 40
+	 * @return the number of remainder bits, between 0 and 7
+	 */
+	public static int getRemainderBits(int version) {
+		checkVersion(version);
+		return REMAINDER_BITS[version-1];
+	}
+	
+	/**
+	 * Get the length of the character count indicator in byte mode
+	 * @param version
+	 *          version of the QRcode, between 1 and 40
+	 * @return 8 bits up to version 9, 16 bits above
+	 */
+	public static int getByteCountBits(int version) {
+		return Mode.BYTE.getCountBits(version);
+	}
+	
+	/**
+	 * Get the range of versions sharing the same character count indicator lengths
+	 * @param version
+	 *          version of the QRcode, between 1 and 40
+	 * @return 0 for versions 1 to 9, 1 for versions 10 to 26, 2 for versions 27 to 40
+	 */
+	public static int getCountRange(int version) {
+		checkVersion(version);
+		return version < COUNT_RANGE_STARTS[1] ? 0 : version < COUNT_RANGE_STARTS[2] ? 1 : 2;
+	}
+	
+	private static void checkVersion(int version) {
+		if(version<1 || version>MAX_VERSION) {
+			throw new IllegalArgumentException("The version has to be between 1 and " + MAX_VERSION);
 		}
-		return VERSION_CODE_WORDS[version-1] ;
 	}
 
 
 
 	/**
-	 * Return the sequence of pixels that encodes the format information related to error correction level and used mask.
+	 * Return the sequence of pixels that encodes the format information related to error correction level L and used mask.
 	 * The array is a boolean array providing a binary representation of the data, with the most significant bit first
 	 * @param mask
 	 *        the integer code of the mask to be used (must be between 0 and 7)
 	 * @return the array of pixels encoding the format information. Most significant bit first
 	 */
 	public static boolean[] getFormatSequence(int mask) {
+		return getFormatSequence(mask, CorrectionLvl.L);
+	}
+	
+	/**
+	 * Return the sequence of pixels that encodes the format information related to error correction level and used mask.
+	 * @param mask
+	 *        the integer code of the mask to be used (must be between 0 and 7)
+	 * @param lvl
+	 *        the error correction level
+	 * @return the array of 15 pixels encoding the format information. Most significant bit first
+	 */
+	public static boolean[] getFormatSequence(int mask, CorrectionLvl lvl) {
+		return toPixels(getFormatWord(mask, lvl), 15);
+	}
+	
+	/**
+	 * Get the 15 bits of format information, read from the precomputed table
+	 * @param mask
+	 *        the integer code of the mask to be used (must be between 0 and 7)
+	 * @param lvl
+	 *        the error correction level
+	 * @return the format information, bit 14 being the first pixel of the sequence
+	 */
+	public static int getFormatWord(int mask, CorrectionLvl lvl) {
 		if(mask>7 || mask <0) {
 			throw new IllegalArgumentException("The mask has to be between 0 and 7");
 		}
-		int errorCorrectionLevel=CorrectionLvl.L.ordinal();
-		int code = ((LVL_CODE[errorCorrectionLevel]& 0x3)<<3) | (mask&0x7);
-		int current = code<<10;
-	
-		int poly = 0b10100110111;
-		int size = 15;
-		while(((0b1<<(size-1)) & current) ==0) {
-			size--;
-			if(size == 0) {
-				throw new IllegalAccessError();
-			}
+		return FORMAT_WORDS[lvl.ordinal() << 3 | mask];
+	}
+	
+	/**
+	 * Return the sequence of pixels that encodes the version information, used from version 7 onwards.
+	 * @param version
+	 *        version of the QRcode, between 7 and 40
+	 * @return the array of 18 pixels encoding the version information. Most significant bit first
+	 */
+	public static boolean[] getVersionSequence(int version) {
+		return toPixels(getVersionWord(version), 18);
+	}
+	
+	/**
+	 * Get the 18 bits of version information, read from the precomputed table
+	 * @param version
+	 *        version of the QRcode, between 7 and 40
+	 * @return the version information, bit 17 being the first pixel of the sequence
+	 */
+	public static int getVersionWord(int version) {
+		checkVersion(version);
+		if(version < VERSION_INFORMATION_VERSION) {
+			throw new IllegalArgumentException("Only versions " + VERSION_INFORMATION_VERSION + " and above carry version information");
 		}
-		
-		while(size>10) {
-			int paddedPoly = poly<<(size-11);
+		return VERSION_WORDS[version - VERSION_INFORMATION_VERSION];
+	}
 	
-			current = paddedPoly^current;
-			
-			
-			while(((0b1<<(size-1)) & current) == 0) {
-				size--;
-				if(size == 0) {
-					throw new IllegalAccessError();
+	/**
+	 * @param version
+	 *        version of the QRcode, between 1 and 40
+	 * @return true if the symbol holds the two version information blocks
+	 */
+	public static boolean hasVersionInformation(int version) {
+		checkVersion(version);
+		return version >= VERSION_INFORMATION_VERSION;
+	}
+	
+	private static int[] formatWordsGenerator() {
+		int[] words = new int[4 * 8];
+		for(CorrectionLvl lvl : CorrectionLvl.values()) {
+			for(int mask=0;mask<8;mask++) {
+				int code = (LVL_CODE[lvl.ordinal()]<<3) | mask;
+				
+				// remainder of the division of code * x^10 by the BCH(15, 5) generator
+				int remainder = code;
+				for(int i=0;i<10;i++) {
+					remainder = (remainder<<1) ^ ((remainder>>>9) * 0b10100110111);
 				}
+				
+				words[lvl.ordinal() << 3 | mask] = (code<<10 | (remainder& 0x3FF)) ^ 0b101010000010010;
 			}
 		}
-		
-		int format = (code<<10 | (current& 0x3FF)) ^ 0b101010000010010;
-		
-		boolean[] formatPixels = new boolean[15];
-		for(int i=0;i<formatPixels.length;i++) {
-			formatPixels[i] = !(((format >> (14 - i)) & 0b1) == 0);
-		}
-		
-		return formatPixels;
+		return words;
 	}
 	
+	private static int[] versionWordsGenerator() {
+		int[] words = new int[MAX_VERSION - VERSION_INFORMATION_VERSION + 1];
+		for(int version=VERSION_INFORMATION_VERSION;version<=MAX_VERSION;version++) {
+			
+			// remainder of the division of version * x^12 by the BCH(18, 6) generator
+			int remainder = version;
+			for(int i=0;i<12;i++) {
+				remainder = (remainder<<1) ^ ((remainder>>>11) * 0b1111100100101);
+			}
+			
+			words[version - VERSION_INFORMATION_VERSION] = version<<12 | (remainder & 0xFFF);
+		}
+		return words;
+	}
 	
+	private static boolean[] toPixels(int bits, int length) {
+		boolean[] pixels = new boolean[length];
+		for(int i=0;i<length;i++) {
+			pixels[i] = ((bits >> (length - 1 - i)) & 0b1) != 0;
+		}
+		return pixels;
+	}
 
 }
@@ -0,0 +1,319 @@
+package qrcode;
+
+/**
+ * Split a text into the sequence of numeric, alphanumeric, byte and kanji
+ * segments taking the fewest bits in a given range of versions.
+ *
+ * A dynamic program walks the text once, keeping for each mode the cheapest
+ * encoding of the prefix ending with a segment of that mode. The costs are
+ * counted in sixths of bits, so that every mode has an integer cost per
+ * character: 20 for a digit (10 bits per 3), 33 for an alphanumeric character
+ * (11 bits per 2), 48 for a byte and 78 for a kanji (13 bits). A segment is
+ * rounded up to whole bits when the mode changes.
+ *
+ * Texts having characters out of ISO-8859-1 that are not kanji either are
+ * written in UTF-8, announced by an ECI header in front of the segments: the
+ * byte mode then costs the UTF-8 length of each character.
+ *
+ * An instance keeps its scratch arrays from one text to the next, it is not
+ * thread safe.
+ */
+public final class Segmenter {
+
+	private static final Mode[] MODES = { Mode.NUMERIC, Mode.ALPHANUMERIC, Mode.BYTE, Mode.KANJI };
+	private static final int MODE_COUNT = MODES.length;
+
+	private static final int NONE = -1;
+
+	/*
+	 * Mode indicator and 8 bits designator of the UTF-8 ECI
+	 */
+	private static final int ECI_HEADER_BITS = 12;
+
+	private final int[] headCosts = new int[MODE_COUNT];
+	private int[] costs = new int[MODE_COUNT];
+	private int[] nextCosts = new int[MODE_COUNT];
+
+	/*
+	 * choices[i * MODE_COUNT + j] = the mode of the character i in the cheapest
+	 * encoding of the characters 0 to i followed by a segment of mode j, NONE
+	 * if there is none
+	 */
+	private byte[] choices = new byte[0];
+
+	/*
+	 * modes[i] = the mode of the character i in the cheapest encoding
+	 */
+	private byte[] modes = new byte[0];
+
+	/*
+	 * True if the current text is written in UTF-8
+	 */
+	private boolean utf8;
+
+	/**
+	 * Compute the number of bits of the cheapest segmentation of the text
+	 *
+	 * @param input
+	 *            the text to encode
+	 * @param version
+	 *            a version of the range of versions sharing the same character
+	 *            count indicator lengths
+	 * @return the number of bits of all the segments, headers included
+	 */
+	public int getBitCost(CharSequence input, int version) {
+		return getBitCost(input, version, false);
+	}
+
+	/**
+	 * Compute the number of bits of the cheapest segmentation of the text
+	 *
+	 * @param input
+	 *            the text to encode
+	 * @param version
+	 *            a version of the range of versions sharing the same character
+	 *            count indicator lengths
+	 * @param utf8
+	 *            true to write the byte mode in UTF-8 even if the text does not
+	 *            need it, e.g. because it is a part of a text that does
+	 * @return the number of bits of all the segments, headers included
+	 */
+	public int getBitCost(CharSequence input, int version, boolean utf8) {
+		return segment(input, version, utf8);
+	}
+
+	/**
+	 * Append the cheapest segmentation of the text to a bit buffer
+	 *
+	 * @param input
+	 *            the text to encode
+	 * @param version
+	 *            the version of the QR code
+	 * @param output
+	 *            the buffer to which the segments are appended
+	 * @return the number of segments
+	 */
+	public int appendSegments(CharSequence input, int version, BitBuffer output) {
+		return appendSegments(input, version, false, output);
+	}
+
+	/**
+	 * Append the cheapest segmentation of the text to a bit buffer
+	 *
+	 * @param input
+	 *            the text to encode
+	 * @param version
+	 *            the version of the QR code
+	 * @param utf8
+	 *            true to write the byte mode in UTF-8, behind an ECI header,
+	 *            even if the text does not need it
+	 * @param output
+	 *            the buffer to which the segments are appended
+	 * @return the number of segments
+	 */
+	public int appendSegments(CharSequence input, int version, boolean utf8, BitBuffer output) {
+
+		segment(input, version, utf8);
+		if (this.utf8) {
+			DataEncoding.appendECI(DataEncoding.UTF8_ECI, output);
+		}
+
+		final int LENGTH = input.length();
+		int segments = 0;
+		int start = 0;
+		for (int i = 1; i <= LENGTH; ++i) {
+			if (i == LENGTH || modes[i] != modes[start]) {
+				if (this.utf8 && MODES[modes[start]] == Mode.BYTE) {
+					appendUTF8Segment(input, start, i, version, output);
+				} else {
+					DataEncoding.appendSegment(MODES[modes[start]], input, start, i, version, output);
+				}
+				++segments;
+				start = i;
+			}
+		}
+		return segments;
+	}
+
+	/**
+	 * Compute the XOR of the bytes the cheapest segmentation of the text
+	 * stands for: the characters of the numeric and alphanumeric segments,
+	 * the Shift JIS codes of the kanji, and the ISO-8859-1 or UTF-8 bytes of
+	 * the byte segments. It is the parity of a Structured Append sequence.
+	 *
+	 * @param input
+	 *            the text to encode
+	 * @param version
+	 *            the version of the QR code
+	 * @param utf8
+	 *            true to write the byte mode in UTF-8 even if the text does not
+	 *            need it
+	 * @return the parity byte of the segments
+	 */
+	public int getParity(CharSequence input, int version, boolean utf8) {
+
+		segment(input, version, utf8);
+
+		int parity = 0;
+		for (int i = 0; i < input.length(); ++i) {
+			final Mode MODE = MODES[modes[i]];
+			int bytes = input.charAt(i);
+			if (MODE == Mode.KANJI) {
+				bytes = KanjiTable.toShiftJIS(KanjiTable.get(input.charAt(i)));
+			} else if (MODE == Mode.BYTE && this.utf8) {
+				bytes = utf8Bytes(input, i);
+			}
+			parity ^= bytes ^ (bytes >>> 8) ^ (bytes >>> 16) ^ (bytes >>> 24);
+		}
+		return parity & 0xFF;
+	}
+
+	/**
+	 * Append a byte mode segment holding the UTF-8 bytes of input[from..to[,
+	 * a lone surrogate being replaced by '?' like utf8Length() counts it
+	 */
+	private static void appendUTF8Segment(CharSequence input, int from, int to, int version, BitBuffer output) {
+
+		int byteCount = 0;
+		for (int i = from; i < to; ++i) {
+			byteCount += DataEncoding.utf8Length(input, i);
+		}
+		DataEncoding.appendSegmentHeader(Mode.BYTE, byteCount, version, output);
+
+		for (int i = from; i < to; ++i) {
+			output.appendBits(utf8Bytes(input, i), 8 * DataEncoding.utf8Length(input, i));
+		}
+	}
+
+	/**
+	 * @return the UTF-8 bytes of input[i] packed in an int, first byte in the
+	 *         high order bits, see utf8Length() for their number. The low half
+	 *         of a surrogate pair has none, it is encoded with the high half.
+	 */
+	private static int utf8Bytes(CharSequence input, int i) {
+
+		final char C = input.charAt(i);
+		switch (DataEncoding.utf8Length(input, i)) {
+			case 0:
+				return 0;
+			case 1:
+				return C < 0x80 ? C : '?';
+			case 2:
+				return (0xC0 | C >>> 6) << 8 | 0x80 | (C & 0x3F);
+			case 3:
+				return (0xE0 | C >>> 12) << 16 | (0x80 | (C >>> 6 & 0x3F)) << 8 | 0x80 | (C & 0x3F);
+			default:
+				final int CODE_POINT = Character.toCodePoint(C, input.charAt(i + 1));
+				return (0xF0 | CODE_POINT >>> 18) << 24 | (0x80 | (CODE_POINT >>> 12 & 0x3F)) << 16
+						| (0x80 | (CODE_POINT >>> 6 & 0x3F)) << 8 | 0x80 | (CODE_POINT & 0x3F);
+		}
+	}
+
+	/**
+	 * Run the dynamic program and store the mode of each character in modes
+	 *
+	 * @return the number of bits of the segmentation
+	 */
+	private int segment(CharSequence input, int version, boolean forceUTF8) {
+
+		final int LENGTH = input.length();
+		if (LENGTH == 0) {
+			utf8 = false;
+			return 0;
+		}
+		utf8 = forceUTF8 || needsUTF8(input);
+		if (modes.length < LENGTH) {
+			modes = new byte[Math.max(LENGTH, 2 * modes.length)];
+			choices = new byte[modes.length * MODE_COUNT];
+		}
+
+		for (int j = 0; j < MODE_COUNT; ++j) {
+			headCosts[j] = (4 + MODES[j].getCountBits(version)) * 6;
+			costs[j] = headCosts[j];
+		}
+
+		for (int i = 0; i < LENGTH; ++i) {
+			final int ROW = i * MODE_COUNT;
+
+			// Extend the current segment of each mode able to encode the character
+			for (int j = 0; j < MODE_COUNT; ++j) {
+				final int CHAR_COST = charCost(MODES[j], input, i);
+				if (CHAR_COST != NONE) {
+					nextCosts[j] = costs[j] + CHAR_COST;
+					choices[ROW + j] = (byte) j;
+				} else {
+					choices[ROW + j] = NONE;
+				}
+			}
+
+			// Or close it after the character and start a segment of another mode
+			for (int j = 0; j < MODE_COUNT; ++j) {
+				for (int k = 0; k < MODE_COUNT; ++k) {
+					if (choices[ROW + k] != NONE) {
+						final int SWITCH_COST = (nextCosts[k] + 5) / 6 * 6 + headCosts[j];
+						if (choices[ROW + j] == NONE || SWITCH_COST < nextCosts[j]) {
+							nextCosts[j] = SWITCH_COST;
+							choices[ROW + j] = (byte) k;
+						}
+					}
+				}
+			}
+
+			final int[] SWAP = costs;
+			costs = nextCosts;
+			nextCosts = SWAP;
+		}
+
+		int mode = 0;
+		for (int j = 1; j < MODE_COUNT; ++j) {
+			if (costs[j] < costs[mode]) {
+				mode = j;
+			}
+		}
+		final int BITS = (costs[mode] + 5) / 6 + (utf8 ? ECI_HEADER_BITS : 0);
+
+		// Walk the choices back from the cheapest final mode
+		for (int i = LENGTH - 1; i >= 0; --i) {
+			mode = choices[i * MODE_COUNT + mode];
+			modes[i] = (byte) mode;
+		}
+
+		return BITS;
+	}
+
+	/**
+	 * @return the cost of the character input[i] in sixths of bits, NONE if
+	 *         the mode cannot encode it
+	 */
+	private int charCost(Mode mode, CharSequence input, int i) {
+		switch (mode) {
+			case NUMERIC:
+				return DataEncoding.isNumeric(input.charAt(i)) ? 20 : NONE;
+			case ALPHANUMERIC:
+				return DataEncoding.isAlphanumeric(input.charAt(i)) ? 33 : NONE;
+			case KANJI:
+				return DataEncoding.isKanji(input.charAt(i)) ? 78 : NONE;
+			default:
+				if (utf8) {
+					return 48 * DataEncoding.utf8Length(input, i);
+				}
+				// Without ECI the bytes are ISO-8859-1
+				return input.charAt(i) <= 0xFF ? 48 : NONE;
+		}
+	}
+
+	/**
+	 * @return true if a character of the text is neither in ISO-8859-1 nor a
+	 *         kanji, so that the byte mode has to use UTF-8
+	 */
+	static boolean needsUTF8(CharSequence input) {
+		for (int i = 0; i < input.length(); ++i) {
+			final char C = input.charAt(i);
+			if (C > 0xFF && !DataEncoding.isKanji(C)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,227 @@
+package qrcode;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import qrcode.QRCodeInfos.CorrectionLvl;
+
+/**
+ * Structured Append: a text too long for a single symbol of the allowed
+ * versions is split into up to 16 symbols. Each of them starts with a header
+ * giving its position in the sequence, the number of symbols and a parity
+ * byte of the whole text, so that a reader can put the parts back together.
+ */
+public final class StructuredAppend {
+
+	public static final int MAX_SYMBOLS = 16;
+
+	private static final int MODE_INDICATOR = 0b0011;
+
+	/*
+	 * Mode indicator, symbol position, symbol count and parity
+	 */
+	private static final int HEADER_BITS = 4 + 4 + 4 + 8;
+
+	private StructuredAppend() {
+	}
+
+	/**
+	 * Encode a text into as few symbols as possible, all of them of version
+	 * maxVersion at most. The symbols are rendered in parallel on the common
+	 * pool.
+	 *
+	 * @param input
+	 *            the text to encode
+	 * @param maxVersion
+	 *            the largest version allowed, between 1 and 40
+	 * @param lvl
+	 *            the error correction level of every symbol
+	 * @return the symbols in sequence order. A text fitting in a single symbol
+	 *         gives a plain symbol, without Structured Append header
+	 * @throws DataTooLongException
+	 *             if the text does not fit in 16 symbols
+	 */
+	public static BitMatrix[] encode(String input, int maxVersion, CorrectionLvl lvl) {
+		return encode(input, maxVersion, lvl, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Encode a text into as few symbols as possible, all of them of version
+	 * maxVersion at most, each symbol being rendered on the given executor.
+	 *
+	 * @param input
+	 *            the text to encode
+	 * @param maxVersion
+	 *            the largest version allowed, between 1 and 40
+	 * @param lvl
+	 *            the error correction level of every symbol
+	 * @param executor
+	 *            where the symbols are encoded and masked
+	 * @return the symbols in sequence order
+	 * @throws DataTooLongException
+	 *             if the text does not fit in 16 symbols
+	 */
+	public static BitMatrix[] encode(String input, int maxVersion, CorrectionLvl lvl, Executor executor) {
+
+		final Segmenter SEGMENTER = EncoderContext.current().segmenter();
+		if (SEGMENTER.getBitCost(input, maxVersion) <= QRCodeInfos.getDataBits(maxVersion, lvl)) {
+			BitBuffer data = new BitBuffer();
+			final int VERSION = DataEncoding.encode(input, lvl, data);
+			return new BitMatrix[] { render(VERSION, data, lvl) };
+		}
+
+		// The segments are built here, only the error correction and the mask
+		// search of each symbol run on the executor
+		final Part[] PARTS = split(input, maxVersion, lvl);
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		CompletableFuture<BitMatrix>[] symbols = new CompletableFuture[PARTS.length];
+		for (int i = 0; i < PARTS.length; ++i) {
+			final Part PART = PARTS[i];
+			symbols[i] = CompletableFuture.supplyAsync(() -> encodePart(PART, lvl), executor);
+		}
+
+		BitMatrix[] result = new BitMatrix[PARTS.length];
+		for (int i = 0; i < PARTS.length; ++i) {
+			result[i] = symbols[i].join();
+		}
+		return result;
+	}
+
+	/**
+	 * A symbol of the sequence: its version and its segments, Structured
+	 * Append header included
+	 */
+	static final class Part {
+
+		final int version;
+		final BitBuffer segments;
+
+		Part(int version, BitBuffer segments) {
+			this.version = version;
+			this.segments = segments;
+		}
+	}
+
+	/**
+	 * Split the text into the parts of a Structured Append sequence and build
+	 * their segments.
+	 *
+	 * Whether the byte mode uses UTF-8 is decided once for the whole text,
+	 * every part then follows it, so that the parity byte, the XOR of the
+	 * bytes the segments of all the parts stand for, matches their content.
+	 *
+	 * @param input
+	 *            the text to encode
+	 * @param maxVersion
+	 *            the largest version allowed, between 1 and 40
+	 * @param lvl
+	 *            the error correction level of every symbol
+	 * @return the parts in sequence order
+	 * @throws DataTooLongException
+	 *             if the text does not fit in 16 symbols
+	 */
+	static Part[] split(String input, int maxVersion, CorrectionLvl lvl) {
+
+		final Segmenter SEGMENTER = EncoderContext.current().segmenter();
+		final boolean UTF8 = Segmenter.needsUTF8(input);
+		final int[] ENDS = split(input, maxVersion, QRCodeInfos.getDataBits(maxVersion, lvl) - HEADER_BITS, UTF8,
+				SEGMENTER);
+		final int COUNT = ENDS.length;
+
+		// Each part goes into the smallest version holding it, whose count
+		// indicator lengths may change its segments and thus the parity
+		String[] texts = new String[COUNT];
+		int[] versions = new int[COUNT];
+		int parity = 0;
+		for (int i = 0; i < COUNT; ++i) {
+			final String TEXT = input.substring(i == 0 ? 0 : ENDS[i - 1], ENDS[i]);
+			texts[i] = TEXT;
+			versions[i] = QRCodeInfos.getMinimumVersion(
+					version -> HEADER_BITS + SEGMENTER.getBitCost(TEXT, version, UTF8), lvl);
+			parity ^= SEGMENTER.getParity(TEXT, versions[i], UTF8);
+		}
+
+		Part[] parts = new Part[COUNT];
+		for (int i = 0; i < COUNT; ++i) {
+			BitBuffer segments = new BitBuffer(QRCodeInfos.getDataBits(versions[i], lvl));
+			segments.appendBits(MODE_INDICATOR, 4);
+			segments.appendBits(i, 4);
+			segments.appendBits(COUNT - 1, 4);
+			segments.appendBits(parity, 8);
+			SEGMENTER.appendSegments(texts[i], versions[i], UTF8, segments);
+			parts[i] = new Part(versions[i], segments);
+		}
+		return parts;
+	}
+
+	/**
+	 * Find the end of each part, taking for each symbol the longest prefix of
+	 * the rest whose segments fit. The cost of a prefix grows with its length,
+	 * so the prefix is binary searched.
+	 *
+	 * @return the index following the last character of each part
+	 */
+	private static int[] split(String input, int maxVersion, int capacity, boolean utf8, Segmenter segmenter) {
+
+		final int LENGTH = input.length();
+		int[] ends = new int[MAX_SYMBOLS];
+		int count = 0;
+		int start = 0;
+
+		while (start < LENGTH) {
+			if (count == MAX_SYMBOLS) {
+				final int BITS = segmenter.getBitCost(input, maxVersion, utf8) + MAX_SYMBOLS * HEADER_BITS;
+				throw new DataTooLongException(BITS, MAX_SYMBOLS * (capacity + HEADER_BITS));
+			}
+
+			int low = start;
+			int high = LENGTH;
+			while (low < high) {
+				final int MIDDLE = (low + high + 1) >>> 1;
+				if (segmenter.getBitCost(input.subSequence(start, MIDDLE), maxVersion, utf8) <= capacity) {
+					low = MIDDLE;
+				} else {
+					high = MIDDLE - 1;
+				}
+			}
+			// Never separate the two halves of a surrogate pair
+			if (low < LENGTH && low > start && Character.isLowSurrogate(input.charAt(low))
+					&& Character.isHighSurrogate(input.charAt(low - 1))) {
+				--low;
+			}
+			if (low == start) {
+				// Not even one character fits behind the header
+				final int BITS = segmenter.getBitCost(input.subSequence(start, start + 1), maxVersion, utf8)
+						+ HEADER_BITS;
+				throw new DataTooLongException(BITS, capacity + HEADER_BITS);
+			}
+
+			ends[count++] = low;
+			start = low;
+		}
+
+		int[] result = new int[count];
+		System.arraycopy(ends, 0, result, 0, count);
+		return result;
+	}
+
+	/**
+	 * Add the error correction of a part and render it with the best mask
+	 */
+	private static BitMatrix encodePart(Part part, CorrectionLvl lvl) {
+
+		BitBuffer data = new BitBuffer(QRCodeInfos.getTotalCodewords(part.version) * 8);
+		final int[] CODEWORDS = DataEncoding.toDataCodewords(part.segments, part.version, lvl);
+		DataEncoding.bytesToBitBuffer(DataEncoding.addErrorCorrection(CODEWORDS, part.version, lvl), data);
+
+		return render(part.version, data, lvl);
+	}
+
+	private static BitMatrix render(int version, BitBuffer data, CorrectionLvl lvl) {
+		final int MASK = MatrixConstruction.findBestMasking(version, data, lvl);
+		return MatrixConstruction.renderBitMatrix(version, data, MASK, lvl);
+	}
+
+}
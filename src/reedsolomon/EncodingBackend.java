@@ -0,0 +1,19 @@
+package reedsolomon;
+
+/**
+ * Implementations available to compute the error correction of several blocks
+ * at once, see ErrorCorrectionEncoding.setBackend()
+ */
+public enum EncodingBackend {
+
+	/**
+	 * One block after the other, with the multiplication table
+	 */
+	SCALAR,
+
+	/**
+	 * Eight blocks at once, one per byte lane of a 64-bit word
+	 */
+	SWAR
+
+}
@@ -1,53 +1,51 @@
 package reedsolomon;
 
+import java.util.stream.IntStream;
+
 public final class ErrorCorrectionEncoding {
-	
-	
-	
-	
-	
-	
-	
-	private static final int[] ANTILOG_TABLE = antilogTableGenerator();
-	private static final int[] LOG_TABLE = logTableGenerator();
-	
-	private static final int[] antilogTableGenerator() {
-		int[] table = new int[256];
-		int n = 1;
-		for(int i=0;i<256;i++) {
-
-			if(table[n]==0) {
-				table[n]= i;
-			}
-			
-			n*=2;
-			if(n>255) {
-				n= n^285;
-			}
+
+	/*
+	 * Number of messages encoded by each task of a parallel batch, a multiple
+	 * of the SWAR lane count
+	 */
+	private static final int BATCH_CHUNK = 256;
+
+	/*
+	 * Backend used by encodeBlocks(), can be chosen at startup with the system
+	 * property reedsolomon.backend (scalar or swar)
+	 */
+	private static volatile EncodingBackend backend = defaultBackend();
+
+	private static EncodingBackend defaultBackend() {
+		final String PROPERTY = System.getProperty("reedsolomon.backend", EncodingBackend.SCALAR.name());
+		try {
+			return EncodingBackend.valueOf(PROPERTY.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			return EncodingBackend.SCALAR;
 		}
-		
-		table[0] = -1;
-		return table;
-	}
-	
-	
-	
-	
-	private static int[] logTableGenerator() {
-		int[] table = new int[256];
-		int n = 1;
-		for(int i=0;i<256;i++) {
-			table[i] = n;
-			n*=2;
-			if(n>255) {
-				n= n^285;
-			}
+	}
+
+	/**
+	 * Choose the implementation used to encode several blocks at once. It applies to every
+	 * caller of encodeBlocks() and encodeBatch(), including the interleaving of QRCodeEncoder
+	 * and DataEncoding.encode(). Those run on the calling thread, only
+	 * BlockInterleaver.interleave(int[], int, CorrectionLvl) splits large versions on the
+	 * fork-join pool.
+	 * @param encodingBackend the backend to use from now on
+	 */
+	public static void setBackend(EncodingBackend encodingBackend) {
+		if(encodingBackend == null) {
+			throw new IllegalArgumentException("The backend cannot be null");
 		}
-		
-		
-		return table;
+		backend = encodingBackend;
 	}
 
+	/**
+	 * @return the implementation currently used to encode several blocks at once
+	 */
+	public static EncodingBackend getBackend() {
+		return backend;
+	}
 
 	/**
 	 * Generate a given number of error correction codewords (ECC) for the given sequence of bytes
@@ -56,131 +54,301 @@ public final class ErrorCorrectionEncoding {
 	 * @return An array of ECC bytes for messageCodeWords
 	 */
 	public static int[] encode(int[] messageCodeWords,int errorCorrectionCodewords) {
-		
+
+		int[] errorCodewords = new int[errorCorrectionCodewords];
+		if(errorCorrectionCodewords == 0) {
+			return errorCodewords;
+		}
+
 		/*
-		 * Generate the message polynomial
+		 * Fetch the generator polynomial, computed once per ECC length
 		 */
-		GalloisNumber[] messagePoly = new GalloisNumber[messageCodeWords.length];
-		int i= messageCodeWords.length-1;
-		for(int word:messageCodeWords) {
-			messagePoly[i--] =GalloisNumber.getGalloisNumber( word & 0xFF); 
-		}
-		
+		int[] generatorPoly = GeneratorPolynomials.get(errorCorrectionCodewords);
+
 		/*
-		 * Create the generator polynomial
+		 * Divide the message polynomial by the generator, the output array is
+		 * used as the remainder register so that nothing else is allocated
 		 */
-		GalloisNumber[] generatorPoly = polynomialGenerator(errorCorrectionCodewords);
-		
-		GalloisNumber[] remainder = messagePoly;
-		
-		for(int step=0;step<messageCodeWords.length;step++ ) {
-			int remainderSize = errorCorrectionCodewords<remainder.length? remainder.length-1:errorCorrectionCodewords;
-			GalloisNumber[] nextRemainder = new  GalloisNumber[remainderSize];
-			
-			
-			/*
-			 * multiply the generator polynomial
-			 */
-			GalloisNumber[] divisor = new GalloisNumber[generatorPoly.length];
-			GalloisNumber mul = remainder[remainder.length-1];
-			i = 0;
-			for(GalloisNumber coeff:generatorPoly) {
-				divisor[i++] = coeff.mul(mul);
+		for(int word:messageCodeWords) {
+			shiftRegister(errorCodewords, generatorPoly, word & 0xFF);
+		}
+
+		return errorCodewords;
+	}
+
+	/**
+	 * Generate the ECC of several blocks, with the current backend. The result is
+	 * the same as calling encode() on each block.
+	 * @param messages the blocks from which the ECC are generated
+	 * @param errorCorrectionCodewords the number of ECC to generate for each block
+	 * @return the ECC of each block
+	 */
+	public static int[][] encodeBlocks(int[][] messages,int errorCorrectionCodewords) {
+
+		final int BLOCKS = messages.length;
+		int[][] errorCodewords = new int[BLOCKS][];
+
+		if(backend == EncodingBackend.SCALAR || errorCorrectionCodewords == 0) {
+			for(int b=0;b<BLOCKS;b++) {
+				errorCodewords[b] = encode(messages[b], errorCorrectionCodewords);
 			}
-			
-			/*
-			 * XOR result with remainder
-			 */
-			for(int j=1;j<=remainderSize;j++) {
-				GalloisNumber temp = null;
-				if(divisor.length-j-1 >=0 && remainder.length-j-1>=0) {
-					temp = divisor[divisor.length-j-1].add(remainder[remainder.length-j-1]);
-				}else if(remainder.length-j-1>=0){
-					temp = remainder[remainder.length-j-1];
-				}else {
-					temp = divisor[divisor.length-j-1];
+			return errorCodewords;
+		}
+
+		// Lay the blocks out one after the other for the SWAR kernel
+		int[] offsets = new int[BLOCKS];
+		int[] lengths = new int[BLOCKS];
+		int total = 0;
+		for(int b=0;b<BLOCKS;b++) {
+			offsets[b] = total;
+			lengths[b] = messages[b].length;
+			total += lengths[b];
+		}
+		int[] data = new int[total];
+		for(int b=0;b<BLOCKS;b++) {
+			System.arraycopy(messages[b], 0, data, offsets[b], lengths[b]);
+			errorCodewords[b] = new int[errorCorrectionCodewords];
+		}
+
+		long[] register = new long[errorCorrectionCodewords];
+		for(int from=0;from<BLOCKS;from+=SwarEncoding.LANES) {
+			final int LANES = Math.min(SwarEncoding.LANES, BLOCKS - from);
+			SwarEncoding.encode(data, offsets, lengths, from, LANES, register);
+			for(int l=0;l<LANES;l++) {
+				for(int i=0;i<errorCorrectionCodewords;i++) {
+					errorCodewords[from+l][i] = (int) (register[i] >>> (8*l)) & 0xFF;
 				}
-				
-				nextRemainder[remainderSize-j] = temp;
 			}
-			
-			remainder=nextRemainder;
-			
-		}
-		
-		
-		/*
-		 * Generate error correction codewords
-		 */
-		int[] errorCodewords = new int[errorCorrectionCodewords];
-		i= errorCorrectionCodewords-1;
-		for(GalloisNumber coeff:remainder) {
-			errorCodewords[i--] =  0xFF & coeff.represent();
 		}
 		return errorCodewords;
 	}
-	
-	
-	private final static class GalloisNumber{
-		final int p;
-		
-		public GalloisNumber(int power) {
-			p=power;
-		}
-		
-		public static GalloisNumber getGalloisNumber(int number) {
-			if(number>255) {
-				number=number^285;
+
+	/**
+	 * Generate the ECC of the blocks [from, to) stored in a single array, with the
+	 * current backend. The i-th ECC of block b is written to out[outOffset + b + i * outStride],
+	 * which is the interleaved order of a QR code when outStride is the number of blocks.
+	 * @param data the codewords of all the blocks
+	 * @param offsets index in data of the first codeword of each block
+	 * @param lengths number of codewords of each block
+	 * @param from first block to encode
+	 * @param to block after the last one to encode
+	 * @param errorCorrectionCodewords the number of ECC to generate for each block
+	 * @param out the destination array
+	 * @param outOffset index in out of the first ECC of block 0
+	 * @param outStride distance in out between two ECC of the same block
+	 */
+	public static void encodeBlocks(int[] data, int[] offsets, int[] lengths, int from, int to,
+			int errorCorrectionCodewords, int[] out, int outOffset, int outStride) {
+
+		if(errorCorrectionCodewords == 0) {
+			return;
+		}
+		if(backend == EncodingBackend.SCALAR) {
+			encodeBlocks(data, offsets, lengths, from, to, out, outOffset, outStride, new ReedSolomonEncoder(errorCorrectionCodewords));
+		} else {
+			encodeBlocks(data, offsets, lengths, from, to, out, outOffset, outStride, new long[errorCorrectionCodewords]);
+		}
+	}
+
+	/**
+	 * Generate the ECC of the blocks [from, to) like encodeBlocks(int[], int[], int[], int, int, int, int[], int, int),
+	 * with caller-owned working storage so that nothing is allocated. Only the storage of the current backend is used.
+	 * @param data the codewords of all the blocks
+	 * @param offsets index in data of the first codeword of each block
+	 * @param lengths number of codewords of each block
+	 * @param from first block to encode
+	 * @param to block after the last one to encode
+	 * @param out the destination array
+	 * @param outOffset index in out of the first ECC of block 0
+	 * @param outStride distance in out between two ECC of the same block
+	 * @param encoder the encoder of the scalar backend, it sets the number of ECC to generate for each block
+	 * @param register the register of the SWAR backend, as long as the number of ECC
+	 */
+	public static void encodeBlocks(int[] data, int[] offsets, int[] lengths, int from, int to,
+			int[] out, int outOffset, int outStride, ReedSolomonEncoder encoder, long[] register) {
+
+		if(encoder.getECCLength() != register.length) {
+			throw new IllegalArgumentException("The encoder and the register do not have the same ECC length");
+		}
+		if(backend == EncodingBackend.SCALAR) {
+			encodeBlocks(data, offsets, lengths, from, to, out, outOffset, outStride, encoder);
+		} else {
+			encodeBlocks(data, offsets, lengths, from, to, out, outOffset, outStride, register);
+		}
+	}
+
+	private static void encodeBlocks(int[] data, int[] offsets, int[] lengths, int from, int to,
+			int[] out, int outOffset, int outStride, ReedSolomonEncoder encoder) {
+
+		encoder.reset();
+		for(int b=from;b<to;b++) {
+			encoder.update(data, offsets[b], lengths[b]);
+			encoder.finish(out, outOffset + b, outStride);
+		}
+	}
+
+	private static void encodeBlocks(int[] data, int[] offsets, int[] lengths, int from, int to,
+			int[] out, int outOffset, int outStride, long[] register) {
+
+		final int ECC = register.length;
+		for(int group=from;group<to;group+=SwarEncoding.LANES) {
+			final int LANES = Math.min(SwarEncoding.LANES, to - group);
+			SwarEncoding.encode(data, offsets, lengths, group, LANES, register);
+			for(int i=0;i<ECC;i++) {
+				final int ROW = outOffset + group + i * outStride;
+				for(int l=0;l<LANES;l++) {
+					out[ROW + l] = (int) (register[i] >>> (8*l)) & 0xFF;
+				}
 			}
-			return new GalloisNumber(ANTILOG_TABLE[number]);
 		}
-		
-		public GalloisNumber add(GalloisNumber n2) {
-			int res = this.represent() ^ n2.represent();
-			return getGalloisNumber(res);
+	}
+
+	/**
+	 * Generate the ECC of many messages of the same length. The generator and
+	 * the working arrays are set up once for the whole batch.
+	 * @param messages the messages, all of the same length
+	 * @param errorCorrectionCodewords the number of ECC to generate for each message
+	 * @param out the destination, out[m] receives the ECC of messages[m] and must hold at least errorCorrectionCodewords bytes
+	 */
+	public static void encodeBatch(byte[][] messages, int errorCorrectionCodewords, byte[][] out) {
+		encodeBatch(messages, errorCorrectionCodewords, out, false);
+	}
+
+	/**
+	 * Generate the ECC of many messages of the same length. The generator and
+	 * the working arrays are set up once for the whole batch.
+	 * @param messages the messages, all of the same length
+	 * @param errorCorrectionCodewords the number of ECC to generate for each message
+	 * @param out the destination, out[m] receives the ECC of messages[m] and must hold at least errorCorrectionCodewords bytes
+	 * @param parallel true to spread the batch on the common fork-join pool
+	 */
+	public static void encodeBatch(byte[][] messages, int errorCorrectionCodewords, byte[][] out, boolean parallel) {
+		if(out.length < messages.length) {
+			throw new IllegalArgumentException("The output holds less arrays than the number of messages");
 		}
-		
-		public GalloisNumber mul(GalloisNumber n2) {
-			if(p<0 || n2.p<0) {
-				return new GalloisNumber(-1);
+		for(byte[] message:messages) {
+			if(message.length != messages[0].length) {
+				throw new IllegalArgumentException("All the messages of a batch must have the same length");
 			}
-			return new GalloisNumber((n2.p +p)%255 );
 		}
-		
-		public int represent() {
-			if(p<0) {
-				return 0;
+
+		final int COUNT = messages.length;
+		if(errorCorrectionCodewords == 0) {
+			return;
+		}
+		if(parallel && COUNT > BATCH_CHUNK) {
+			IntStream.range(0, (COUNT + BATCH_CHUNK - 1) / BATCH_CHUNK).parallel().forEach(chunk ->
+				encodeBatchRange(messages, errorCorrectionCodewords, out, chunk * BATCH_CHUNK, Math.min(COUNT, (chunk + 1) * BATCH_CHUNK)));
+		} else {
+			encodeBatchRange(messages, errorCorrectionCodewords, out, 0, COUNT);
+		}
+	}
+
+	/**
+	 * Generate the ECC of many messages of the same length stored one after the
+	 * other in a single array. The ECC are written the same way in out.
+	 * @param messages the messages, message m being at [m * messageLength, (m + 1) * messageLength)
+	 * @param messageLength the number of codewords of each message
+	 * @param count the number of messages
+	 * @param errorCorrectionCodewords the number of ECC to generate for each message
+	 * @param out the destination, the ECC of message m are written at [m * errorCorrectionCodewords, (m + 1) * errorCorrectionCodewords)
+	 */
+	public static void encodeBatch(byte[] messages, int messageLength, int count, int errorCorrectionCodewords, byte[] out) {
+		encodeBatch(messages, messageLength, count, errorCorrectionCodewords, out, false);
+	}
+
+	/**
+	 * Generate the ECC of many messages of the same length stored one after the
+	 * other in a single array. The ECC are written the same way in out.
+	 * @param messages the messages, message m being at [m * messageLength, (m + 1) * messageLength)
+	 * @param messageLength the number of codewords of each message
+	 * @param count the number of messages
+	 * @param errorCorrectionCodewords the number of ECC to generate for each message
+	 * @param out the destination, the ECC of message m are written at [m * errorCorrectionCodewords, (m + 1) * errorCorrectionCodewords)
+	 * @param parallel true to spread the batch on the common fork-join pool
+	 */
+	public static void encodeBatch(byte[] messages, int messageLength, int count, int errorCorrectionCodewords, byte[] out, boolean parallel) {
+		if(messages.length < messageLength * count || out.length < errorCorrectionCodewords * count) {
+			throw new IllegalArgumentException("The arrays are too small for " + count + " messages");
+		}
+		if(errorCorrectionCodewords == 0) {
+			return;
+		}
+
+		if(parallel && count > BATCH_CHUNK) {
+			IntStream.range(0, (count + BATCH_CHUNK - 1) / BATCH_CHUNK).parallel().forEach(chunk ->
+				encodeBatchRange(messages, messageLength, errorCorrectionCodewords, out, chunk * BATCH_CHUNK, Math.min(count, (chunk + 1) * BATCH_CHUNK)));
+		} else {
+			encodeBatchRange(messages, messageLength, errorCorrectionCodewords, out, 0, count);
+		}
+	}
+
+	private static void encodeBatchRange(byte[][] messages, int errorCorrectionCodewords, byte[][] out, int from, int to) {
+		if(backend == EncodingBackend.SCALAR) {
+			ReedSolomonEncoder encoder = new ReedSolomonEncoder(errorCorrectionCodewords);
+			for(int m=from;m<to;m++) {
+				encoder.update(messages[m], 0, messages[m].length);
+				encoder.finish(out[m], 0);
+			}
+			return;
+		}
+
+		long[] register = new long[errorCorrectionCodewords];
+		for(int group=from;group<to;group+=SwarEncoding.LANES) {
+			final int LANES = Math.min(SwarEncoding.LANES, to - group);
+			SwarEncoding.encode(messages, group, LANES, register);
+			for(int l=0;l<LANES;l++) {
+				final byte[] ECC = out[group + l];
+				for(int i=0;i<errorCorrectionCodewords;i++) {
+					ECC[i] = (byte) (register[i] >>> (8*l));
+				}
+			}
+		}
+	}
+
+	private static void encodeBatchRange(byte[] messages, int messageLength, int errorCorrectionCodewords, byte[] out, int from, int to) {
+		if(backend == EncodingBackend.SCALAR) {
+			ReedSolomonEncoder encoder = new ReedSolomonEncoder(errorCorrectionCodewords);
+			for(int m=from;m<to;m++) {
+				encoder.update(messages, m * messageLength, messageLength);
+				encoder.finish(out, m * errorCorrectionCodewords);
 			}
-			return LOG_TABLE[p];
+			return;
 		}
-		
-		public String toString() {
-			if(p<0) {
-				return "0";
+
+		long[] register = new long[errorCorrectionCodewords];
+		for(int group=from;group<to;group+=SwarEncoding.LANES) {
+			final int LANES = Math.min(SwarEncoding.LANES, to - group);
+			SwarEncoding.encode(messages, group * messageLength, messageLength, LANES, register);
+			for(int l=0;l<LANES;l++) {
+				final int OFFSET = (group + l) * errorCorrectionCodewords;
+				for(int i=0;i<errorCorrectionCodewords;i++) {
+					out[OFFSET + i] = (byte) (register[i] >>> (8*l));
+				}
 			}
-			return "a^"+p;
-		}
-		
-	}
-
-	private final static GalloisNumber[] polynomialGenerator(int n) {
-		if(n == 1) {
-			GalloisNumber[] poly = {new GalloisNumber(0),new GalloisNumber(0)};
-			return poly;
-		}
-		GalloisNumber[] left = polynomialGenerator(n-1);
-		GalloisNumber[] right = {new GalloisNumber(n-1),new GalloisNumber(0)};
-		
-		GalloisNumber[] poly = new GalloisNumber[n+1];
-		poly[0] = right[0].mul(left[0]);
-		poly[n] = right[1];
-		
-		for(int i=1;i<n;i++) {
-			poly[i] = right[0].mul(left[i]).add(right[1].mul(left[i-1]));
-		}
-		
-		return poly;
-		
-		
+		}
+	}
+
+	/**
+	 * Feed one codeword to the remainder register of a polynomial division by the generator.
+	 * The register holds the coefficients of the remainder, highest degree first.
+	 * @param register the remainder, of the same length as the ECC
+	 * @param generatorPoly the generator coefficients, highest degree first (generatorPoly[0] = 1)
+	 * @param codeword the next message codeword (between 0 and 255)
+	 */
+	static void shiftRegister(int[] register, int[] generatorPoly, int codeword) {
+		final int LAST = register.length - 1;
+		final int FACTOR = codeword ^ register[0];
+
+		if(FACTOR == 0) {
+			System.arraycopy(register, 1, register, 0, LAST);
+			register[LAST] = 0;
+			return;
+		}
+
+		for(int j=0;j<LAST;j++) {
+			register[j] = register[j+1] ^ GaloisField.mul(generatorPoly[j+1], FACTOR);
+		}
+		register[LAST] = GaloisField.mul(generatorPoly[LAST+1], FACTOR);
 	}
 }
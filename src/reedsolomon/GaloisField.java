@@ -0,0 +1,157 @@
+package reedsolomon;
+
+/**
+ * Table-driven arithmetic in GF(256) with the QR code primitive polynomial
+ * x^8 + x^4 + x^3 + x^2 + 1 (285).
+ *
+ * Elements are plain integers between 0 and 255, no object is allocated by
+ * any of the operations.
+ */
+public final class GaloisField {
+
+	public static final int SIZE = 256;
+	public static final int PRIMITIVE = 285;
+
+	/*
+	 * EXP_TABLE[i] = a^i, doubled in length so that the sum of two logarithms
+	 * never has to be reduced modulo 255
+	 */
+	private static final int[] EXP_TABLE = expTableGenerator();
+
+	/*
+	 * LOG_TABLE[n] = i such that a^i = n. LOG_TABLE[0] is undefined (-1)
+	 */
+	private static final int[] LOG_TABLE = logTableGenerator();
+
+	/*
+	 * MUL_TABLE[(a << 8) | b] = a * b
+	 */
+	private static final byte[] MUL_TABLE = mulTableGenerator();
+
+	private GaloisField() {
+	}
+
+	private static int[] expTableGenerator() {
+		int[] table = new int[2 * SIZE];
+		int n = 1;
+		for (int i = 0; i < table.length; ++i) {
+			table[i] = n;
+			n <<= 1;
+			if (n > 255) {
+				n ^= PRIMITIVE;
+			}
+		}
+		return table;
+	}
+
+	private static int[] logTableGenerator() {
+		int[] table = new int[SIZE];
+		table[0] = -1;
+		for (int i = 0; i < 255; ++i) {
+			table[EXP_TABLE[i]] = i;
+		}
+		return table;
+	}
+
+	private static byte[] mulTableGenerator() {
+		byte[] table = new byte[SIZE * SIZE];
+		for (int a = 1; a < SIZE; ++a) {
+			for (int b = 1; b < SIZE; ++b) {
+				table[(a << 8) | b] = (byte) EXP_TABLE[LOG_TABLE[a] + LOG_TABLE[b]];
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * Add (or subtract, it is the same in GF(256)) two elements
+	 *
+	 * @param a
+	 * @param b
+	 * @return a + b
+	 */
+	public static int add(int a, int b) {
+		return a ^ b;
+	}
+
+	/**
+	 * Multiply two elements using the full multiplication table
+	 *
+	 * @param a
+	 *            an element between 0 and 255
+	 * @param b
+	 *            an element between 0 and 255
+	 * @return a * b
+	 */
+	public static int mul(int a, int b) {
+		return MUL_TABLE[(a << 8) | b] & 0xFF;
+	}
+
+	/**
+	 * Divide a by b
+	 *
+	 * @param a
+	 * @param b
+	 *            a non zero element
+	 * @return a / b
+	 */
+	public static int div(int a, int b) {
+		if (b == 0) {
+			throw new ArithmeticException("Division by zero in GF(256)");
+		}
+		if (a == 0) {
+			return 0;
+		}
+		return EXP_TABLE[LOG_TABLE[a] + 255 - LOG_TABLE[b]];
+	}
+
+	/**
+	 * @param a
+	 *            a non zero element
+	 * @return the multiplicative inverse of a
+	 */
+	public static int inverse(int a) {
+		return div(1, a);
+	}
+
+	/**
+	 * @param power
+	 *            any non negative integer
+	 * @return a^power, where a is the generator of the field (2)
+	 */
+	public static int exp(int power) {
+		return EXP_TABLE[power % 255];
+	}
+
+	/**
+	 * @param n
+	 *            a non zero element
+	 * @return the power i such that a^i = n
+	 */
+	public static int log(int n) {
+		if (n == 0) {
+			throw new ArithmeticException("The logarithm of 0 is undefined");
+		}
+		return LOG_TABLE[n];
+	}
+
+	/**
+	 * Give access to a whole row of the multiplication table. The products of
+	 * a by every element b are stored at [offset + b].
+	 *
+	 * @param a
+	 *            the constant factor of the row
+	 * @return the offset of the row in {@link #multiplicationTable()}
+	 */
+	static int rowOffset(int a) {
+		return a << 8;
+	}
+
+	/**
+	 * @return the raw 256x256 multiplication table, not to be modified
+	 */
+	static byte[] multiplicationTable() {
+		return MUL_TABLE;
+	}
+
+}
@@ -0,0 +1,88 @@
+package reedsolomon;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lazily populated, thread-safe cache of the Reed-Solomon generator polynomials,
+ * keyed by their degree (i.e. the number of error correction codewords).
+ */
+public final class GeneratorPolynomials {
+
+	/*
+	 * Number of error correction codewords per block used by QR codes of
+	 * versions 1 to 40, for every error correction level
+	 */
+	private static final int[] QR_CODE_ECC_LENGTHS = { 7, 10, 13, 15, 16, 17, 18, 20, 22, 24, 26, 28, 30 };
+
+	private static final int MAX_DEGREE = GaloisField.SIZE - 1;
+
+	private static final AtomicReferenceArray<int[]> CACHE = new AtomicReferenceArray<>(MAX_DEGREE + 1);
+
+	private GeneratorPolynomials() {
+	}
+
+	/**
+	 * Precompute the generator polynomials for every ECC block length used by
+	 * QR codes, so that the first encoding is as fast as the following ones
+	 */
+	public static void warmUp() {
+		warmUp(QR_CODE_ECC_LENGTHS);
+	}
+
+	/**
+	 * Precompute the generator polynomials of the given degrees
+	 *
+	 * @param degrees
+	 *            the numbers of error correction codewords to prepare
+	 */
+	public static void warmUp(int... degrees) {
+		for (int degree : degrees) {
+			get(degree);
+		}
+	}
+
+	/**
+	 * Get the generator polynomial of the given degree, computing it the first
+	 * time only. The returned array is shared and must not be modified.
+	 *
+	 * @param degree
+	 *            the number of error correction codewords, between 1 and 255
+	 * @return the degree+1 coefficients of the polynomial, highest degree first
+	 */
+	static int[] get(int degree) {
+		if (degree < 1 || degree > MAX_DEGREE) {
+			throw new IllegalArgumentException("The number of error correction codewords has to be between 1 and " + MAX_DEGREE);
+		}
+
+		int[] poly = CACHE.get(degree);
+		if (poly == null) {
+			// Concurrent callers may compute the same polynomial, only the first one is kept
+			CACHE.compareAndSet(degree, null, compute(degree));
+			poly = CACHE.get(degree);
+		}
+		return poly;
+	}
+
+	/**
+	 * Compute the generator polynomial (x - a^0)(x - a^1)...(x - a^(n-1))
+	 *
+	 * @param n
+	 *            the degree of the polynomial, i.e. the number of ECC
+	 * @return the n+1 coefficients of the polynomial, highest degree first
+	 */
+	static int[] compute(int n) {
+		int[] poly = new int[n + 1];
+		poly[0] = 1;
+
+		for (int i = 0; i < n; ++i) {
+			// Multiply the current polynomial (of degree i) by (x + a^i)
+			final int ROOT = GaloisField.exp(i);
+			for (int j = i + 1; j > 0; --j) {
+				poly[j] ^= GaloisField.mul(poly[j - 1], ROOT);
+			}
+		}
+
+		return poly;
+	}
+
+}
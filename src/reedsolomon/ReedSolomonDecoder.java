@@ -0,0 +1,192 @@
+package reedsolomon;
+
+/**
+ * Reed-Solomon decoder matching ErrorCorrectionEncoding (generator roots a^0 to
+ * a^(n-1)).
+ *
+ * The syndromes are computed first, if they are all zero the codewords are
+ * valid and nothing else is done (nor allocated). Otherwise the errors are
+ * located with Berlekamp-Massey and a Chien search, and their values computed
+ * with the Forney algorithm. Up to eccLength / 2 errors can be corrected.
+ */
+public final class ReedSolomonDecoder {
+
+	private ReedSolomonDecoder() {
+	}
+
+	/**
+	 * Check that the codewords are a valid Reed-Solomon codeword sequence
+	 *
+	 * @param codewords
+	 *            the data codewords followed by the error correction codewords
+	 * @param eccLength
+	 *            the number of error correction codewords at the end of codewords
+	 * @return true if all the syndromes are zero
+	 */
+	public static boolean isValid(int[] codewords, int eccLength) {
+		for (int i = 0; i < eccLength; ++i) {
+			if (syndrome(codewords, i) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Correct the errors of the codewords in place
+	 *
+	 * @param codewords
+	 *            the data codewords followed by the error correction codewords
+	 * @param eccLength
+	 *            the number of error correction codewords at the end of codewords
+	 * @return the number of codewords that have been corrected
+	 * @throws ReedSolomonException
+	 *             if there are too many errors to correct them
+	 */
+	public static int decode(int[] codewords, int eccLength) {
+
+		if (codewords.length > GaloisField.SIZE - 1) {
+			throw new IllegalArgumentException("A Reed-Solomon block holds at most 255 codewords");
+		}
+
+		if (isValid(codewords, eccLength)) {
+			return 0;
+		}
+
+		int[] syndromes = new int[eccLength];
+		for (int i = 0; i < eccLength; ++i) {
+			syndromes[i] = syndrome(codewords, i);
+		}
+
+		/*
+		 * Berlekamp-Massey: find the error locator polynomial, lowest degree first
+		 */
+		int[] locator = new int[eccLength + 1];
+		int[] previous = new int[eccLength + 1];
+		int[] temp = new int[eccLength + 1];
+		locator[0] = 1;
+		previous[0] = 1;
+		int errorCount = 0;
+		int shift = 1;
+		int previousDiscrepancy = 1;
+
+		for (int k = 0; k < eccLength; ++k) {
+			int discrepancy = syndromes[k];
+			for (int i = 1; i <= errorCount; ++i) {
+				discrepancy ^= GaloisField.mul(locator[i], syndromes[k - i]);
+			}
+
+			if (discrepancy == 0) {
+				++shift;
+				continue;
+			}
+
+			final int COEFF = GaloisField.div(discrepancy, previousDiscrepancy);
+			if (2 * errorCount <= k) {
+				System.arraycopy(locator, 0, temp, 0, locator.length);
+				for (int i = 0; i + shift < locator.length; ++i) {
+					locator[i + shift] ^= GaloisField.mul(COEFF, previous[i]);
+				}
+				errorCount = k + 1 - errorCount;
+				int[] swap = previous;
+				previous = temp;
+				temp = swap;
+				previousDiscrepancy = discrepancy;
+				shift = 1;
+			} else {
+				for (int i = 0; i + shift < locator.length; ++i) {
+					locator[i + shift] ^= GaloisField.mul(COEFF, previous[i]);
+				}
+				++shift;
+			}
+		}
+
+		if (2 * errorCount > eccLength) {
+			throw new ReedSolomonException("Too many errors to correct");
+		}
+
+		/*
+		 * Chien search: the codeword at index j has the degree p = length - 1 - j,
+		 * it is erroneous if the locator has a root at a^-p
+		 */
+		final int LENGTH = codewords.length;
+		int[] positions = new int[errorCount];
+		int found = 0;
+		for (int p = 0; p < LENGTH; ++p) {
+			if (evaluate(locator, errorCount, GaloisField.exp(255 - p)) == 0) {
+				if (found == errorCount) {
+					throw new ReedSolomonException("The error locator has too many roots");
+				}
+				positions[found++] = p;
+			}
+		}
+
+		if (found != errorCount) {
+			throw new ReedSolomonException("The error locator roots do not match the codewords");
+		}
+
+		/*
+		 * Forney: the error evaluator is S(x) * locator(x) mod x^eccLength, the
+		 * error value at X = a^p is X * evaluator(X^-1) / locator'(X^-1)
+		 */
+		int[] evaluator = new int[eccLength];
+		for (int i = 0; i < eccLength; ++i) {
+			int value = 0;
+			for (int j = 0; j <= Math.min(i, errorCount); ++j) {
+				value ^= GaloisField.mul(locator[j], syndromes[i - j]);
+			}
+			evaluator[i] = value;
+		}
+
+		for (int e = 0; e < errorCount; ++e) {
+			final int X = GaloisField.exp(positions[e]);
+			final int X_INV = GaloisField.inverse(X);
+
+			// Formal derivative: only the odd powers remain in characteristic 2
+			int derivative = 0;
+			int power = 1;
+			final int X_INV_SQUARED = GaloisField.mul(X_INV, X_INV);
+			for (int i = 1; i <= errorCount; i += 2) {
+				derivative ^= GaloisField.mul(locator[i], power);
+				power = GaloisField.mul(power, X_INV_SQUARED);
+			}
+
+			if (derivative == 0) {
+				throw new ReedSolomonException("Unable to compute the error value");
+			}
+
+			final int VALUE = GaloisField.mul(X, GaloisField.div(evaluate(evaluator, eccLength - 1, X_INV), derivative));
+			codewords[LENGTH - 1 - positions[e]] ^= VALUE;
+		}
+
+		if (!isValid(codewords, eccLength)) {
+			throw new ReedSolomonException("Too many errors to correct");
+		}
+
+		return errorCount;
+	}
+
+	/**
+	 * Evaluate the received polynomial (first codeword = highest degree) at a^i
+	 */
+	private static int syndrome(int[] codewords, int i) {
+		final int ROOT = GaloisField.exp(i);
+		int value = 0;
+		for (int c : codewords) {
+			value = GaloisField.mul(value, ROOT) ^ (c & 0xFF);
+		}
+		return value;
+	}
+
+	/**
+	 * Evaluate a polynomial given lowest degree first, up to the given degree
+	 */
+	private static int evaluate(int[] poly, int degree, int x) {
+		int value = 0;
+		for (int i = degree; i >= 0; --i) {
+			value = GaloisField.mul(value, x) ^ poly[i];
+		}
+		return value;
+	}
+
+}
@@ -0,0 +1,132 @@
+package reedsolomon;
+
+import java.util.Arrays;
+
+/**
+ * Streaming Reed-Solomon encoder built on a linear feedback shift register.
+ *
+ * The message codewords are fed one at a time or in chunks with update(), the
+ * error correction codewords are then written by finish(). The encoder can be
+ * reused for the next message afterwards, no allocation happens after its
+ * construction.
+ */
+public final class ReedSolomonEncoder {
+
+	private final int[] generatorPoly;
+	private final int[] register;
+
+	/**
+	 * @param eccLength
+	 *            the number of error correction codewords to generate
+	 */
+	public ReedSolomonEncoder(int eccLength) {
+		generatorPoly = GeneratorPolynomials.get(eccLength);
+		register = new int[eccLength];
+	}
+
+	/**
+	 * @return the number of error correction codewords generated by this encoder
+	 */
+	public int getECCLength() {
+		return register.length;
+	}
+
+	/**
+	 * Feed one message codeword
+	 *
+	 * @param codeword
+	 *            the codeword, only its 8 least significant bits are used
+	 */
+	public void update(int codeword) {
+		ErrorCorrectionEncoding.shiftRegister(register, generatorPoly, codeword & 0xFF);
+	}
+
+	/**
+	 * Feed a chunk of message codewords
+	 *
+	 * @param buf
+	 *            the buffer holding the codewords
+	 * @param off
+	 *            index of the first codeword to feed
+	 * @param len
+	 *            number of codewords to feed
+	 */
+	public void update(byte[] buf, int off, int len) {
+		for (int i = off; i < off + len; ++i) {
+			ErrorCorrectionEncoding.shiftRegister(register, generatorPoly, buf[i] & 0xFF);
+		}
+	}
+
+	/**
+	 * Feed a chunk of message codewords
+	 *
+	 * @param buf
+	 *            the buffer holding the codewords
+	 * @param off
+	 *            index of the first codeword to feed
+	 * @param len
+	 *            number of codewords to feed
+	 */
+	public void update(int[] buf, int off, int len) {
+		for (int i = off; i < off + len; ++i) {
+			ErrorCorrectionEncoding.shiftRegister(register, generatorPoly, buf[i] & 0xFF);
+		}
+	}
+
+	/**
+	 * Write the error correction codewords of the message fed so far and reset
+	 * the encoder
+	 *
+	 * @param out
+	 *            the destination buffer
+	 * @param off
+	 *            index of out where the first ECC byte is written
+	 */
+	public void finish(byte[] out, int off) {
+		for (int i = 0; i < register.length; ++i) {
+			out[off + i] = (byte) register[i];
+		}
+		reset();
+	}
+
+	/**
+	 * Write the error correction codewords of the message fed so far and reset
+	 * the encoder
+	 *
+	 * @param out
+	 *            the destination buffer
+	 * @param off
+	 *            index of out where the first ECC codeword is written
+	 */
+	public void finish(int[] out, int off) {
+		System.arraycopy(register, 0, out, off, register.length);
+		reset();
+	}
+
+	/**
+	 * Write the error correction codewords of the message fed so far, one every
+	 * stride positions, and reset the encoder. Used to interleave the codewords
+	 * of several blocks.
+	 *
+	 * @param out
+	 *            the destination buffer
+	 * @param off
+	 *            index of out where the first ECC codeword is written
+	 * @param stride
+	 *            distance between two consecutive ECC codewords in out
+	 */
+	public void finish(int[] out, int off, int stride) {
+		for (int i = 0; i < register.length; ++i) {
+			out[off + i * stride] = register[i];
+		}
+		reset();
+	}
+
+	/**
+	 * Discard the message fed so far
+	 */
+	public void reset() {
+		Arrays.fill(register, 0);
+	}
+
+}
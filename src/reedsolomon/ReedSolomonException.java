@@ -0,0 +1,15 @@
+package reedsolomon;
+
+/**
+ * Thrown when a sequence of codewords holds more errors than its error
+ * correction codewords can correct.
+ */
+public class ReedSolomonException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public ReedSolomonException(String message) {
+		super(message);
+	}
+
+}
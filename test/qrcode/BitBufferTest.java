@@ -0,0 +1,50 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class BitBufferTest {
+
+	@Test
+	void testAppendAndGetBits() {
+		BitBuffer buffer = new BitBuffer(8);
+		buffer.appendBits(0b0100, 4);
+		for (int i = 0; i < 20; ++i) {
+			buffer.appendBits(0xABCDE ^ i, 20);
+		}
+		buffer.appendBit(true);
+
+		assertEquals(4 + 20 * 20 + 1, buffer.size());
+		assertEquals(0b0100, buffer.getBits(0, 4));
+		for (int i = 0; i < 20; ++i) {
+			assertEquals(0xABCDE ^ i, buffer.getBits(4 + 20 * i, 20));
+		}
+		assertTrue(buffer.getBit(buffer.size() - 1));
+		assertFalse(buffer.getBit(0));
+		assertTrue(buffer.getBit(1));
+
+		buffer.clear();
+		assertEquals(0, buffer.size());
+		buffer.appendBits(-1, 32);
+		assertEquals(-1, buffer.getBits(0, 32));
+		assertEquals(0L, buffer.getWord(0) & 0xFFFF_FFFFL);
+	}
+
+	@Test
+	void testBooleanConversion() {
+		boolean[] bits = { true, false, true, true, false, false, false, true, true };
+		BitBuffer buffer = new BitBuffer(bits);
+		assertArrayEquals(bits, buffer.toBooleanArray());
+		assertEquals(0b101100011, buffer.getBits(0, 9));
+	}
+
+	@Test
+	void testByteModeEncoding() {
+		final String message = "Programming is a skill best acquired by practice.";
+		BitBuffer buffer = new BitBuffer();
+		DataEncoding.byteModeEncoding(message, 2, buffer);
+		assertArrayEquals(DataEncoding.byteModeEncoding(message, 2), buffer.toBooleanArray());
+	}
+
+}
@@ -0,0 +1,94 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+
+class BitMatrixTest {
+
+	@Test
+	void testSetAndGet() {
+		BitMatrix matrix = new BitMatrix(70);
+		matrix.set(0, 0, true);
+		matrix.set(63, 1, true);
+		matrix.set(64, 1, true);
+		matrix.setFunction(69, 69, false);
+
+		assertTrue(matrix.get(0, 0));
+		assertTrue(matrix.get(63, 1));
+		assertTrue(matrix.get(64, 1));
+		assertFalse(matrix.get(65, 1));
+		assertTrue(matrix.isFunction(69, 69));
+		assertFalse(matrix.isFunction(0, 0));
+		assertEquals(3, matrix.countDark());
+
+		matrix.set(63, 1, false);
+		assertFalse(matrix.get(63, 1));
+		assertEquals(2, matrix.countDark());
+	}
+
+	@Test
+	void testARGBConversion() {
+		int[][] argb = MatrixConstruction.renderQRCodeMatrix(4, new BitBuffer(), 3);
+		BitMatrix matrix = BitMatrix.fromARGB(argb);
+		assertArrayEquals(argb, matrix.toARGB());
+		assertEquals(MatrixConstruction.evaluate(argb), MatrixConstruction.evaluate(matrix));
+	}
+
+	@Test
+	void testConstructBitMatrix() {
+		assertSame(FunctionTemplate.get(3), FunctionTemplate.get(3));
+		for (int mask = 0; mask < 8; ++mask) {
+			BitMatrix expected = BitMatrix.fromARGB(MatrixConstruction.constructMatrix(4, mask));
+			assertEquals(expected, MatrixConstruction.constructBitMatrix(4, mask));
+		}
+	}
+
+	@Test
+	void testDataPath() {
+		// 8 bits per codeword and the remainder bits
+		final int[] remainders = { 0, 7, 7, 7 };
+		for (int version = 1; version <= 4; ++version) {
+			assertEquals(QRCodeInfos.getTotalCodewords(version) * 8 + remainders[version - 1],
+					FunctionTemplate.get(version).getDataModuleCount());
+		}
+	}
+
+	@Test
+	void testParallelMasking() {
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			for (int length = 0; length < 400; length += 37) {
+				BitBuffer data = new BitBuffer();
+				for (int i = 0; i < length; ++i) {
+					data.appendBits(i * 0x9E37, 16);
+				}
+				assertEquals(MatrixConstruction.findBestMasking(4, data), MatrixConstruction.findBestMasking(4, data, executor));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	void testPenaltyEvaluator() {
+		Random random = new Random(2019);
+		PenaltyEvaluator evaluator = new PenaltyEvaluator();
+		for (int size = 21; size <= 177; size += 12) {
+			int[][] matrix = new int[size][size];
+			for (int x = 0; x < size; ++x) {
+				for (int y = 0; y < size; ++y) {
+					// Stripes with noise, to get long runs and finder-like patterns
+					final boolean dark = (y % 7 < 3) ^ (random.nextInt(6) == 0);
+					matrix[x][y] = dark ? MatrixConstruction.B : MatrixConstruction.W;
+				}
+			}
+			assertEquals(MatrixConstruction.evaluate(matrix), evaluator.evaluate(BitMatrix.fromARGB(matrix)));
+		}
+	}
+
+}
@@ -59,6 +59,185 @@ class DataEncodingTest {
 		assertArrayEquals(byteCodeV1, res);
 	}
 	
+	@Test
+	void testaddInformationsVersion10() {
+		// 16 bits character count indicator from version 10
+		int[] res =  DataEncoding.addInformations(Arrays.copyOfRange(isoCode, 0, 17), 10);
+		int[] expected = new int[byteCodeV1.length + 1];
+		expected[0] = 64;
+		expected[1] = 1;
+		System.arraycopy(byteCodeV1, 1, expected, 2, byteCodeV1.length - 1);
+		assertArrayEquals(expected, res);
+	}
+	
+	@Test
+	void testMinimumVersion() {
+		BitBuffer buffer = new BitBuffer();
+		assertEquals(3, DataEncoding.byteModeEncoding(message, QRCodeInfos.CorrectionLvl.L, buffer));
+		assertEquals(QRCodeInfos.getTotalCodewords(3) * 8, buffer.size());
+		assertEquals(6, DataEncoding.byteModeEncoding(message, QRCodeInfos.CorrectionLvl.H, new BitBuffer()));
+		
+		// The largest version holds 2953 bytes at level L, nothing is truncated
+		char[] longest = new char[2953];
+		Arrays.fill(longest, 'a');
+		assertEquals(40, DataEncoding.byteModeEncoding(new String(longest), QRCodeInfos.CorrectionLvl.L, new BitBuffer()));
+		assertThrows(DataTooLongException.class, () -> DataEncoding.byteModeEncoding(new String(longest) + "a", QRCodeInfos.CorrectionLvl.L, new BitBuffer()));
+	}
+	
+	@Test
+	void testNumericAndAlphanumericModes() {
+		assertEquals(Mode.NUMERIC, DataEncoding.getMode("01234567"));
+		assertEquals(Mode.ALPHANUMERIC, DataEncoding.getMode("AC-42"));
+		assertEquals(Mode.BYTE, DataEncoding.getMode("ac-42"));
+		
+		BitBuffer numeric = new BitBuffer();
+		DataEncoding.appendSegment(Mode.NUMERIC, "01234567", 0, 8, 1, numeric);
+		assertArrayEquals(toBits("0001 0000001000 0000001100 0101011001 1000011"), numeric.toBooleanArray());
+		
+		BitBuffer alphanumeric = new BitBuffer();
+		DataEncoding.appendSegment(Mode.ALPHANUMERIC, "AC-42", 0, 5, 1, alphanumeric);
+		assertArrayEquals(toBits("0010 000000101 00111001110 11100111001 000010"), alphanumeric.toBooleanArray());
+		assertEquals(Mode.ALPHANUMERIC.getBitCost(5, 1), alphanumeric.size());
+		
+		// 41 digits fit in version 1-L, but only 17 bytes
+		char[] digits = new char[41];
+		Arrays.fill(digits, '7');
+		assertEquals(1, DataEncoding.encode(new String(digits), QRCodeInfos.CorrectionLvl.L, new BitBuffer()));
+	}
+	
+	@Test
+	void testSegmentation() {
+		final String ORDER = "https://x.io/ORDER/000123456789";
+		Segmenter segmenter = new Segmenter();
+		
+		// Byte mode up to the last lower case letter, then alphanumeric, then numeric
+		BitBuffer buffer = new BitBuffer();
+		assertEquals(3, segmenter.appendSegments(ORDER, 1, buffer));
+		final int EXPECTED = Mode.BYTE.getBitCost(12, 1) + Mode.ALPHANUMERIC.getBitCost(7, 1) + Mode.NUMERIC.getBitCost(12, 1);
+		assertEquals(EXPECTED, buffer.size());
+		assertEquals(EXPECTED, segmenter.getBitCost(ORDER, 1));
+		assertTrue(EXPECTED < Mode.BYTE.getBitCost(ORDER.length(), 1));
+		
+		// A single mode is kept when switching does not pay off
+		assertEquals(Mode.ALPHANUMERIC.getBitCost(6, 1), segmenter.getBitCost("AB1234", 1));
+	}
+	
+	@Test
+	void testUTF8Segments() {
+		// Neither ISO-8859-1 nor kanji: ECI 26 then the 8 UTF-8 bytes in a single byte segment
+		final String TEXT = "a\u00e9\uac00\u00ff";
+		BitBuffer buffer = new BitBuffer();
+		assertEquals(1, new Segmenter().appendSegments(TEXT, 1, buffer));
+		assertEquals(0b0111_00011010, buffer.getBits(0, 12));
+		assertEquals(0b0100_00001000, buffer.getBits(12, 12));
+		assertEquals(0xEA, buffer.getBits(24 + 3 * 8, 8));
+		assertEquals(12 + Mode.BYTE.getBitCost(8, 1), buffer.size());
+		
+		// ISO-8859-1 texts need no ECI
+		assertEquals(Mode.BYTE.getBitCost(3, 1), new Segmenter().getBitCost("a\u00e9\u00ff", 1));
+		
+		// The lossy conversion replaces every character out of ISO-8859-1 by a single '?'
+		assertArrayEquals(new int[] { 97, 63, 63, 233 }, DataEncoding.encodeString("a\u4e00\ud83d\ude00\u00e9", 10));
+	}
+	
+	@Test
+	void testKanjiMode() {
+		final String KANJI = "\u70b9\u8317";
+		assertTrue(DataEncoding.isKanji(KANJI.charAt(0)));
+		assertFalse(DataEncoding.isKanji('a'));
+		
+		BitBuffer buffer = new BitBuffer();
+		assertEquals(1, new Segmenter().appendSegments(KANJI, 1, buffer));
+		assertArrayEquals(toBits("1000 00000010 0110110011111 1101010101010"), buffer.toBooleanArray());
+		
+		// 13 bits per character instead of 24 bits of UTF-8 and the ECI header
+		char[] text = new char[40];
+		Arrays.fill(text, '\u70b9');
+		assertEquals(Mode.KANJI.getBitCost(40, 1), new Segmenter().getBitCost(new String(text), 1));
+		assertEquals(4, DataEncoding.encode(new String(text), QRCodeInfos.CorrectionLvl.L, new BitBuffer()));
+	}
+	
+	@Test
+	void testStructuredAppend() {
+		// 35 digits fit in a version 1-L symbol behind the 20 bits header
+		char[] digits = new char[201];
+		Arrays.fill(digits, '7');
+		BitMatrix[] symbols = StructuredAppend.encode(new String(digits), 1, QRCodeInfos.CorrectionLvl.L);
+		assertEquals(6, symbols.length);
+		for (BitMatrix symbol : symbols) {
+			assertEquals(21, symbol.getSize());
+		}
+		
+		// Header: mode 0011, position, count - 1 and the XOR of the 201 digits
+		StructuredAppend.Part[] parts = StructuredAppend.split(new String(digits), 1, QRCodeInfos.CorrectionLvl.L);
+		assertEquals(6, parts.length);
+		for (int i = 0; i < parts.length; ++i) {
+			assertEquals(1, parts[i].version);
+			assertEquals(0b0011, parts[i].segments.getBits(0, 4));
+			assertEquals(i, parts[i].segments.getBits(4, 4));
+			assertEquals(5, parts[i].segments.getBits(8, 4));
+			assertEquals('7', parts[i].segments.getBits(12, 8));
+			assertEquals(Mode.NUMERIC.getIndicator(), parts[i].segments.getBits(20, 4));
+		}
+		
+		// A text fitting in one symbol is left as it is
+		assertEquals(1, StructuredAppend.encode(message, 4, QRCodeInfos.CorrectionLvl.L).length);
+		
+		assertThrows(DataTooLongException.class,
+				() -> StructuredAppend.encode(new String(new char[2000]), 1, QRCodeInfos.CorrectionLvl.H));
+	}
+	
+	@Test
+	void testStructuredAppendMixedCharsets() {
+		// An odd number of ISO-8859-1 characters, then characters needing
+		// UTF-8 and kanji, over several parts
+		char[] latin = new char[31];
+		Arrays.fill(latin, '\u00e9');
+		final String TEXT = new String(latin) + "\uac00\u70b9\u8317";
+		
+		StructuredAppend.Part[] parts = StructuredAppend.split(TEXT, 1, QRCodeInfos.CorrectionLvl.L);
+		assertTrue(parts.length > 1);
+		
+		int parity = 0;
+		for (StructuredAppend.Part part : parts) {
+			final BitBuffer BITS = part.segments;
+			assertEquals(parts[0].segments.getBits(12, 8), BITS.getBits(12, 8));
+			
+			// Every part announces UTF-8, even the ones with ISO-8859-1 only
+			assertEquals(0b0111, BITS.getBits(20, 4));
+			assertEquals(DataEncoding.UTF8_ECI, BITS.getBits(24, 8));
+			
+			// XOR the bytes of the byte and kanji segments that follow
+			int index = 32;
+			while (index < BITS.size()) {
+				final int MODE = BITS.getBits(index, 4);
+				final int COUNT = BITS.getBits(index + 4, 8);
+				index += 12;
+				for (int k = 0; k < COUNT; ++k) {
+					if (MODE == Mode.BYTE.getIndicator()) {
+						parity ^= BITS.getBits(index, 8);
+						index += 8;
+					} else {
+						assertEquals(Mode.KANJI.getIndicator(), MODE);
+						final int SHIFT_JIS = KanjiTable.toShiftJIS(BITS.getBits(index, 13));
+						parity ^= (SHIFT_JIS >>> 8) ^ (SHIFT_JIS & 0xFF);
+						index += 13;
+					}
+				}
+			}
+		}
+		assertEquals(parity, parts[0].segments.getBits(12, 8));
+	}
+	
+	private static boolean[] toBits(String bits) {
+		String compact = bits.replace(" ", "");
+		boolean[] res = new boolean[compact.length()];
+		for (int i = 0; i < res.length; ++i) {
+			res[i] = compact.charAt(i) == '1';
+		}
+		return res;
+	}
+	
 	@Test
 	void testFillSequence() {
 		int[] res =  DataEncoding.fillSequence(byteCodeV1, 23);
@@ -72,6 +251,22 @@ class DataEncodingTest {
 		assertArrayEquals(bybetAndError, res);
 	}
 
+	@Test
+	void testAddErrorCorrectionBlocks() {
+		int[] res = DataEncoding.addErrorCorrection(byteCodeV1, 1, QRCodeInfos.CorrectionLvl.L);
+		assertArrayEquals(bybetAndError, res);
+
+		// Version 5-Q: two blocks of 15 data codewords followed by two blocks of 16
+		int[] data = new int[QRCodeInfos.getDataCodewords(5, QRCodeInfos.CorrectionLvl.Q)];
+		for (int i = 0; i < data.length; ++i) {
+			data[i] = i;
+		}
+		res = DataEncoding.addErrorCorrection(data, 5, QRCodeInfos.CorrectionLvl.Q);
+		assertEquals(134, res.length);
+		assertArrayEquals(new int[] { 0, 15, 30, 46, 1, 16, 31, 47 }, Arrays.copyOfRange(res, 0, 8));
+		assertArrayEquals(new int[] { 45, 61 }, Arrays.copyOfRange(res, 60, 62));
+	}
+
 	@Test
 	void testToBinaryArray() {
 		boolean[] res = DataEncoding.bytesToBinaryArray(bybetAndError);
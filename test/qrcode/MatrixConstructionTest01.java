@@ -49,5 +49,31 @@ class MatrixConstructionTest01 {
 		int[][] matrix = MatrixConstruction.constructMatrix(4, 5);
 		assertTrue(Helpers.compare(matrix,"noDataV4M5"),"The format information is wrong. Run Debug.java for more informations");
 	}
+	
+	@Test
+	void testFormatAndVersionSequences() {
+		// Level M with mask 0 is the all zero code, only the XOR mask remains
+		assertArrayEquals(toBits(0b101010000010010, 15), QRCodeInfos.getFormatSequence(0, QRCodeInfos.CorrectionLvl.M));
+		assertArrayEquals(toBits(0x07C94, 18), QRCodeInfos.getVersionSequence(7));
+		assertArrayEquals(toBits(0x28C69, 18), QRCodeInfos.getVersionSequence(40));
+		assertEquals(0x07C94, QRCodeInfos.getVersionWord(7));
+		assertEquals(0b111011111000100, QRCodeInfos.getFormatWord(0, QRCodeInfos.CorrectionLvl.L));
+	}
+	
+	@Test
+	void testDataModuleCount() {
+		for (int version = 1; version <= QRCodeInfos.MAX_VERSION; ++version) {
+			final int EXPECTED = QRCodeInfos.getTotalCodewords(version) * 8 + QRCodeInfos.getRemainderBits(version);
+			assertEquals(EXPECTED, FunctionTemplate.get(version).getDataModuleCount(), "Version " + version);
+		}
+	}
+	
+	private static boolean[] toBits(int value, int length) {
+		boolean[] bits = new boolean[length];
+		for (int i = 0; i < length; ++i) {
+			bits[i] = ((value >> (length - 1 - i)) & 1) != 0;
+		}
+		return bits;
+	}
 
 }
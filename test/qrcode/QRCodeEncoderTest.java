@@ -0,0 +1,146 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import qrcode.QRCodeInfos.CorrectionLvl;
+import reedsolomon.EncodingBackend;
+import reedsolomon.ErrorCorrectionEncoding;
+
+class QRCodeEncoderTest {
+
+	private static final String[] TEXTS = { "", "0123456789012345", "HELLO WORLD",
+			"Programming is a skill best acquired by practice.", "caf\u00e9 \u70b9\u8317 \uac00\ud83d\ude00", repeat("QR code 2021 ", 80) };
+
+	/*
+	 * Published codewords of "HELLO WORLD" in version 1-M: 16 data codewords
+	 * then 10 error correction codewords
+	 */
+	private static final int[] HELLO_WORLD_1M = { 32, 91, 11, 120, 209, 114, 220, 77, 67, 64, 236, 17, 236, 17, 236,
+			17, 196, 35, 39, 119, 235, 215, 231, 226, 93, 23 };
+
+	@Test
+	void testKnownSymbol() {
+		BitMatrix symbol = new QRCodeEncoder(CorrectionLvl.M).encode("HELLO WORLD");
+		assertEquals(21, symbol.getSize());
+
+		BitBuffer expected = new BitBuffer();
+		DataEncoding.bytesToBitBuffer(HELLO_WORLD_1M, expected);
+
+		// The symbol holds the known codewords under one of the masks, the one
+		// with the lowest penalty according to the 2d array scoring
+		int found = -1;
+		int bestScore = Integer.MAX_VALUE;
+		for (int mask = 0; mask < 8; ++mask) {
+			if (MatrixConstruction.renderBitMatrix(1, expected, mask, CorrectionLvl.M).equals(symbol)) {
+				found = mask;
+			}
+			bestScore = Math.min(bestScore,
+					MatrixConstruction.evaluate(MatrixConstruction.renderQRCodeMatrix(1, expected, mask, CorrectionLvl.M)));
+		}
+		assertTrue(found >= 0);
+		assertEquals(bestScore,
+				MatrixConstruction.evaluate(MatrixConstruction.renderQRCodeMatrix(1, expected, found, CorrectionLvl.M)));
+	}
+
+	@Test
+	void testSameAsStaticPipeline() {
+		for (CorrectionLvl lvl : CorrectionLvl.values()) {
+			QRCodeEncoder encoder = new QRCodeEncoder(lvl);
+			for (String text : TEXTS) {
+				BitBuffer data = new BitBuffer();
+				final int VERSION = DataEncoding.encode(text, lvl, data);
+				final int MASK = MatrixConstruction.findBestMasking(VERSION, data, lvl);
+
+				assertEquals(MatrixConstruction.renderBitMatrix(VERSION, data, MASK, lvl), encoder.encode(text),
+						text + " " + lvl);
+			}
+		}
+	}
+
+	@Test
+	void testSwarBackend() {
+		// Version 25-H, its 35 blocks fill several groups of SWAR lanes
+		final String TEXT = repeat("QR code 2021 ", 40);
+		BitMatrix scalar = new QRCodeEncoder(CorrectionLvl.H).encode(TEXT);
+
+		EncodingBackend previous = ErrorCorrectionEncoding.getBackend();
+		try {
+			ErrorCorrectionEncoding.setBackend(EncodingBackend.SWAR);
+			assertEquals(scalar, new QRCodeEncoder(CorrectionLvl.H).encode(TEXT));
+		} finally {
+			ErrorCorrectionEncoding.setBackend(previous);
+		}
+	}
+
+	@Test
+	void testReuseMatrix() {
+		QRCodeEncoder encoder = new QRCodeEncoder(CorrectionLvl.M);
+		BitMatrix matrix = encoder.encode("HELLO WORLD");
+		assertSame(matrix, encoder.encode("HELLO AGAIN", matrix));
+
+		// A matrix of another size is replaced
+		assertNotSame(matrix, encoder.encode(repeat("A", 200), matrix));
+
+		assertThrows(IllegalArgumentException.class, () -> encoder.encode("HELLO", 2, matrix));
+		assertThrows(DataTooLongException.class, () -> encoder.encode(repeat("a", 100), 1, matrix));
+		assertThrows(DataTooLongException.class, () -> encoder.encode(repeat("a", 3000)));
+	}
+
+	@Test
+	void testPooledContexts() throws InterruptedException, ExecutionException {
+		EncoderContext context = EncoderContext.acquire();
+		EncoderContext.release(context);
+		assertSame(context, EncoderContext.acquire());
+		EncoderContext.release(context);
+
+		final BitMatrix[] EXPECTED = new BitMatrix[TEXTS.length];
+		for (int i = 0; i < TEXTS.length; ++i) {
+			EXPECTED[i] = new QRCodeEncoder(CorrectionLvl.Q).encode(TEXTS[i]);
+		}
+
+		// Every task borrows a context, encodes all the texts and gives it back
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Boolean>> results = new ArrayList<>();
+			for (int t = 0; t < 32; ++t) {
+				results.add(executor.submit(() -> {
+					EncoderContext borrowed = EncoderContext.acquire();
+					try {
+						QRCodeEncoder encoder = new QRCodeEncoder(CorrectionLvl.Q, borrowed);
+						for (int i = 0; i < TEXTS.length; ++i) {
+							if (!EXPECTED[i].equals(encoder.encode(TEXTS[i]))) {
+								return false;
+							}
+						}
+						return true;
+					} finally {
+						EncoderContext.release(borrowed);
+					}
+				}));
+			}
+			for (Future<Boolean> result : results) {
+				assertTrue(result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static String repeat(String text, int count) {
+		char[] chars = new char[text.length() * count];
+		for (int i = 0; i < count; ++i) {
+			text.getChars(0, text.length(), chars, i * text.length());
+		}
+		return new String(chars);
+	}
+
+}
@@ -0,0 +1,184 @@
+package reedsolomon;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class ErrorCorrectionEncodingTest {
+
+	private final int[] message = { 65, 21, 7, 38, 246, 119, 38, 22, 214, 214, 150, 230, 114, 6, 151, 50, 6, 18, 0 };
+	private final int[] ecc = { 143, 165, 236, 181, 112, 47, 93 };
+
+	@Test
+	void testEncode() {
+		assertArrayEquals(ecc, ErrorCorrectionEncoding.encode(message, 7));
+	}
+
+	@Test
+	void testGaloisFieldTables() {
+		for (int a = 1; a < 256; ++a) {
+			assertEquals(a, GaloisField.exp(GaloisField.log(a)));
+			assertEquals(1, GaloisField.mul(a, GaloisField.inverse(a)));
+			assertEquals(0, GaloisField.mul(a, 0));
+		}
+		assertEquals(GaloisField.exp(8), GaloisField.PRIMITIVE ^ 256);
+	}
+
+	@Test
+	void testGeneratorPolynomialCache() {
+		// (x - a^0)...(x - a^6) = x^7 + a^87 x^6 + a^229 x^5 + a^146 x^4 + a^149 x^3 + a^238 x^2 + a^102 x + a^21
+		final int[] exponents = { 0, 87, 229, 146, 149, 238, 102, 21 };
+		int[] poly = GeneratorPolynomials.get(7);
+		for (int i = 0; i < exponents.length; ++i) {
+			assertEquals(GaloisField.exp(exponents[i]), poly[i]);
+		}
+		assertSame(poly, GeneratorPolynomials.get(7));
+	}
+
+	@Test
+	void testStreamingEncoder() {
+		byte[] bytes = new byte[message.length];
+		for (int i = 0; i < message.length; ++i) {
+			bytes[i] = (byte) message[i];
+		}
+
+		ReedSolomonEncoder encoder = new ReedSolomonEncoder(7);
+		int[] res = new int[7];
+		for (int round = 0; round < 2; ++round) {
+			encoder.update(bytes[0]);
+			encoder.update(bytes, 1, 10);
+			encoder.update(message, 11, message.length - 11);
+			encoder.finish(res, 0);
+			assertArrayEquals(ecc, res);
+		}
+	}
+
+	@Test
+	void testDecoder() {
+		int[] codewords = new int[message.length + ecc.length];
+		System.arraycopy(message, 0, codewords, 0, message.length);
+		System.arraycopy(ecc, 0, codewords, message.length, ecc.length);
+		assertTrue(ReedSolomonDecoder.isValid(codewords, 7));
+
+		int[] corrupted = codewords.clone();
+		corrupted[0] ^= 0x55;
+		corrupted[10] = 0;
+		corrupted[24] ^= 1;
+		assertFalse(ReedSolomonDecoder.isValid(corrupted, 7));
+		assertEquals(3, ReedSolomonDecoder.decode(corrupted, 7));
+		assertArrayEquals(codewords, corrupted);
+
+		corrupted[1] ^= 1;
+		corrupted[2] ^= 2;
+		corrupted[3] ^= 3;
+		corrupted[4] ^= 4;
+		assertThrows(ReedSolomonException.class, () -> ReedSolomonDecoder.decode(corrupted, 7));
+	}
+
+	@Test
+	void testSwarBackend() {
+		int[][] blocks = new int[11][];
+		for (int b = 0; b < blocks.length; ++b) {
+			blocks[b] = new int[message.length - b % 2];
+			for (int i = 0; i < blocks[b].length; ++i) {
+				blocks[b][i] = (message[i] * (b + 1)) & 0xFF;
+			}
+		}
+
+		EncodingBackend previous = ErrorCorrectionEncoding.getBackend();
+		try {
+			ErrorCorrectionEncoding.setBackend(EncodingBackend.SWAR);
+			int[][] res = ErrorCorrectionEncoding.encodeBlocks(blocks, 30);
+			for (int b = 0; b < blocks.length; ++b) {
+				assertArrayEquals(ErrorCorrectionEncoding.encode(blocks[b], 30), res[b]);
+			}
+		} finally {
+			ErrorCorrectionEncoding.setBackend(previous);
+		}
+	}
+
+	@Test
+	void testEncodeBatch() {
+		final int count = 20;
+		byte[] messages = new byte[count * message.length];
+		byte[][] split = new byte[count][message.length];
+		for (int m = 0; m < count; ++m) {
+			for (int i = 0; i < message.length; ++i) {
+				messages[m * message.length + i] = (byte) message[i];
+				split[m][i] = (byte) message[i];
+			}
+		}
+
+		byte[] flatOut = new byte[count * ecc.length];
+		byte[][] out = new byte[count][ecc.length];
+		ErrorCorrectionEncoding.encodeBatch(messages, message.length, count, ecc.length, flatOut);
+		ErrorCorrectionEncoding.encodeBatch(split, ecc.length, out, true);
+
+		for (int m = 0; m < count; ++m) {
+			for (int i = 0; i < ecc.length; ++i) {
+				assertEquals(ecc[i], flatOut[m * ecc.length + i] & 0xFF);
+				assertEquals(ecc[i], out[m][i] & 0xFF);
+			}
+		}
+	}
+
+	@Test
+	void testLargeEncodeBatch() {
+		// More than 256 messages, split into parallel chunks
+		final int count = 600;
+		final int length = 40;
+		final int eccLength = 18;
+		byte[] messages = new byte[count * length];
+		byte[][] split = new byte[count][length];
+		int[][] expected = new int[count][];
+		for (int m = 0; m < count; ++m) {
+			int[] codewords = new int[length];
+			for (int i = 0; i < length; ++i) {
+				codewords[i] = (m * 31 + i * 7 + m * i) & 0xFF;
+				messages[m * length + i] = (byte) codewords[i];
+				split[m][i] = (byte) codewords[i];
+			}
+			expected[m] = ErrorCorrectionEncoding.encode(codewords, eccLength);
+		}
+
+		EncodingBackend previous = ErrorCorrectionEncoding.getBackend();
+		try {
+			for (EncodingBackend backend : EncodingBackend.values()) {
+				ErrorCorrectionEncoding.setBackend(backend);
+				byte[] flatOut = new byte[count * eccLength];
+				byte[][] out = new byte[count][eccLength];
+				ErrorCorrectionEncoding.encodeBatch(messages, length, count, eccLength, flatOut, true);
+				ErrorCorrectionEncoding.encodeBatch(split, eccLength, out, true);
+
+				for (int m = 0; m < count; ++m) {
+					for (int i = 0; i < eccLength; ++i) {
+						assertEquals(expected[m][i], flatOut[m * eccLength + i] & 0xFF, backend + " message " + m);
+						assertEquals(expected[m][i], out[m][i] & 0xFF, backend + " message " + m);
+					}
+				}
+			}
+		} finally {
+			ErrorCorrectionEncoding.setBackend(previous);
+		}
+	}
+
+	@Test
+	void testNoErrorCorrection() {
+		assertEquals(0, ErrorCorrectionEncoding.encode(message, 0).length);
+
+		EncodingBackend previous = ErrorCorrectionEncoding.getBackend();
+		try {
+			for (EncodingBackend backend : EncodingBackend.values()) {
+				ErrorCorrectionEncoding.setBackend(backend);
+				ErrorCorrectionEncoding.encodeBatch(new byte[300][5], 0, new byte[300][0], true);
+				ErrorCorrectionEncoding.encodeBatch(new byte[50], 5, 10, 0, new byte[0]);
+				ErrorCorrectionEncoding.encodeBlocks(message, new int[] { 0 }, new int[] { message.length }, 0, 1, 0,
+						new int[message.length], message.length, 1);
+				assertEquals(0, ErrorCorrectionEncoding.encodeBlocks(new int[][] { message }, 0)[0].length);
+			}
+		} finally {
+			ErrorCorrectionEncoding.setBackend(previous);
+		}
+	}
+
+}